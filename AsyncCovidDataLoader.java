@@ -0,0 +1,100 @@
+import java.lang.reflect.Method;
+import java.time.LocalDate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Supplier;
+
+/**
+ * Runs CovidDataLoader queries in the background, so the JavaFX thread never waits on the database.
+ * Each method returns a CompletableFuture that completes with the query's result.
+ * Cancelling a future before its query has started stops the query from running at all.
+ * Results are kept in the ResultCache, and cached results are returned without using a thread.
+ *
+ * @author Muhammed Keeka
+ * @version 2024-03-25
+ */
+public class AsyncCovidDataLoader
+{
+    // One thread per pooled connection; any more would only wait for a connection.
+    private static final int THREADS = CovidDataLoader.POOL_SIZE;
+    private static ExecutorService executor = null;
+
+    /**
+     * @return the executor queries run on, creating it if necessary.
+     */
+    private static synchronized ExecutorService getExecutor()
+    {
+        if(executor == null)
+            executor = Executors.newFixedThreadPool(THREADS, createThreadFactory());
+        return executor;
+    }
+
+    /**
+     * Uses virtual threads when the JVM has them (Java 21 onwards), and daemon threads otherwise.
+     * Reflection is used so that the project still compiles on older JDKs.
+     */
+    private static ThreadFactory createThreadFactory()
+    {
+        try
+        {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        }
+        catch (Exception e)
+        {
+            return runnable -> {
+                Thread thread = new Thread(runnable, "covid-data-loader");
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+    }
+
+    /**
+     * Runs any query in the background.
+     * @param query the query to run.
+     * @return a future holding the query's result.
+     */
+    public static <T> CompletableFuture<T> supply(Supplier<T> query)
+    {
+        return CompletableFuture.supplyAsync(query, getExecutor());
+    }
+
+    /**
+     * Runs a query in the background unless its result is already in the ResultCache.
+     * @param kind the name the result is cached under.
+     * @param query the query to run.
+     * @return a future holding the query's result.
+     */
+    public static <T> CompletableFuture<T> supplyCached(String kind, LocalDate start, LocalDate end, Supplier<T> query)
+    {
+        if(ResultCache.contains(kind, start, end, null))
+            return CompletableFuture.completedFuture(ResultCache.get(kind, start, end, null, query));
+        return supply(() -> ResultCache.get(kind, start, end, null, query));
+    }
+
+    public static CompletableFuture<Integer[][]> getBoroughDeltas(LocalDate start, LocalDate end)
+    {
+        return supplyCached("BoroughDeltas", start, end, () -> CovidDataLoader.getBoroughDeltas(start, end));
+    }
+
+    public static CompletableFuture<DailySeries[]> getSeries(SeriesRequest request)
+    {
+        return supplyCached(request.toString(), request.getStart(), request.getEnd(), () -> CovidDataLoader.getSeries(request));
+    }
+
+    /**
+     * Stops the background threads. Queries that haven't started yet are abandoned.
+     */
+    public static synchronized void shutdown()
+    {
+        if(executor != null)
+        {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The 33 London boroughs, each with a dense id from 0 to COUNT - 1.
+ * Per-borough data can then be kept in plain arrays indexed by id, and borough names
+ * only need to be looked up at the edges: when reading the database and when the user
+ * clicks on the map.
+ * Names are looked up case-insensitively, and the map's FXML ids, which use '+' for
+ * spaces (e.g. "Kensington+And+Chelsea"), are accepted as aliases.
+ *
+ * @author Muhammed Keeka
+ * @version 2024-03-25
+ */
+public class BoroughRegistry
+{
+    // The names as they appear in the database, in alphabetical order.
+    private static final String[] NAMES = {
+        "Barking And Dagenham", "Barnet", "Bexley", "Brent", "Bromley", "Camden", "City Of London",
+        "Croydon", "Ealing", "Enfield", "Greenwich", "Hackney", "Hammersmith And Fulham", "Haringey",
+        "Harrow", "Havering", "Hillingdon", "Hounslow", "Islington", "Kensington And Chelsea",
+        "Kingston Upon Thames", "Lambeth", "Lewisham", "Merton", "Newham", "Redbridge",
+        "Richmond Upon Thames", "Southwark", "Sutton", "Tower Hamlets", "Waltham Forest",
+        "Wandsworth", "Westminster"
+    };
+    // Usual residents at the 2021 census, rounded to the nearest hundred, in the same order as NAMES.
+    private static final int[] POPULATIONS = {
+        218900, 389300, 246500, 339800, 330000, 210100, 8600,
+        390800, 367100, 330000, 289100, 259200, 183200, 264200,
+        261200, 262000, 305900, 288200, 216600, 143400,
+        168000, 317600, 300600, 215200, 351100, 310300,
+        195200, 307700, 209600, 310300, 278400,
+        327500, 204300
+    };
+    public static final int COUNT = NAMES.length;
+    private static final Map<String, Integer> IDS = new HashMap<>();
+
+    static
+    {
+        for(int id = 0; id < COUNT; id++)
+            IDS.put(normalize(NAMES[id]), id);
+    }
+
+    private BoroughRegistry()
+    {
+    }
+
+    /**
+     * @param name a borough's name, or its FXML id.
+     * @return the borough's id, or -1 if it isn't a London borough.
+     */
+    public static int getId(String name)
+    {
+        if(name == null)
+            return -1;
+        Integer id = IDS.get(normalize(name));
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @return the borough's name, as it appears in the database.
+     */
+    public static String getName(int id)
+    {
+        return NAMES[id];
+    }
+
+    /**
+     * @return the borough's population at the 2021 census.
+     */
+    public static int getPopulation(int id)
+    {
+        return POPULATIONS[id];
+    }
+
+    /**
+     * @return the id of the borough's StackPane in MapChooser.fxml.
+     */
+    public static String getFxmlId(int id)
+    {
+        return NAMES[id].replace(' ', '+');
+    }
+
+    /**
+     * @return whether the id belongs to a borough.
+     */
+    public static boolean isValid(int id)
+    {
+        return id >= 0 && id < COUNT;
+    }
+
+    /**
+     * @return the names of all the boroughs, indexed by id.
+     */
+    public static String[] getNames()
+    {
+        return NAMES.clone();
+    }
+
+    private static String normalize(String name)
+    {
+        return name.replace('+', ' ').trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -1,42 +1,69 @@
 import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.scene.Node;
+import javafx.scene.Parent;
 import javafx.scene.Scene;
-import javafx.geometry.Insets;
 import javafx.scene.control.Label;
-import javafx.scene.layout.GridPane;
+import javafx.scene.control.TableCell;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
 import javafx.stage.Stage;
 import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.function.Function;
+import java.util.logging.Logger;
 import javafx.scene.layout.BorderPane;
-import java.util.ArrayList;
-import javafx.scene.control.ScrollPane;
 import javafx.scene.control.ComboBox;
 import javafx.stage.Screen;
 import javafx.scene.layout.HBox;
 
 /**
  * The window in which a borough's data is displayed.
+ * The data is shown in a TableView, which only creates cells for the rows that are visible,
+ * so the number of nodes doesn't grow with the date range.
+ * The records are fetched once, and re-ordered in memory.
  *
  * @author Muhammed Keeka
  * @version 2024-03-25
  */
 public class BoroughWindow extends Application
 {
-    private GridPane pane;
+    private static final Logger LOGGER = Logger.getLogger(BoroughWindow.class.getName());
+
+    private TableView<CovidData> table;
     private LocalDate start, end;
+    private int borough;
     private String boroughName;
     private final String[] FIELD_NAMES = {"Date", "Retail Recreational GMR", "Grocery Pharmacy GMR", "Parks GMR", "Transit GMR", "Workplaces GMR", "Residential GMR", "New Cases", "Total Cases", "New Deaths"};
+    private static final List<Function<CovidData, ?>> FIELDS = List.of(
+        CovidData::getDate, CovidData::getRetailRecreationalGMR, CovidData::getGroceryPharmacyGMR,
+        CovidData::getParksGMR, CovidData::getTransitGMR, CovidData::getWorkplacesGMR,
+        CovidData::getResidentialGMR, CovidData::getNewCases, CovidData::getTotalCases, CovidData::getNewDeaths);
+
+    // The borough's records in date order, fetched once when the window opens, and views of them for the table.
+    private CovidRecords records;
+    private List<CovidData> rows;
+    // For each field, the order of the records sorted by that field. Computed the first time it's needed.
+    private int[][] permutations;
 
-    public BoroughWindow(LocalDate start, LocalDate end, String boroughName)
+    /**
+     * @param borough the borough's BoroughRegistry id.
+     */
+    public BoroughWindow(LocalDate start, LocalDate end, int borough)
     {
         this.start = start;
         this.end = end;
-        this.boroughName = boroughName;
+        this.borough = borough;
+        this.boroughName = BoroughRegistry.getName(borough);
         start(new Stage());
     }
-    
+
     /**
-     * The start method is the main entry point for every JavaFX application. 
-     * It is called after the init() method has returned and after 
+     * The start method is the main entry point for every JavaFX application.
+     * It is called after the init() method has returned and after
      * the system is ready for the application to begin running.
      *
      * @param  stage the primary stage for this application.
@@ -44,87 +71,157 @@ public class BoroughWindow extends Application
     @Override
     public void start(Stage stage)
     {
+        long openStart = System.nanoTime();
 
         BorderPane root = new BorderPane();
-        
-        // Create a new grid pane
-        pane = new GridPane();
-        pane.setPadding(new Insets(10, 10, 10, 10));
-        pane.setVgap(10);
-        pane.setHgap(10);
-        setColumnNames();
-        
-        ScrollPane sp = new ScrollPane(pane);
-        sp.setMinSize(927, 300);
-        sp.setMaxSize(927, Screen.getPrimary().getVisualBounds().getHeight() - 100);
-        
+
+        // Create the table, one column per field
+        table = new TableView<>();
+        table.setPlaceholder(new Label("No data for this date range"));
+        for(int i = 0; i < FIELD_NAMES.length; i++)
+        {
+            addColumn(FIELD_NAMES[i], FIELDS.get(i));
+        }
+        table.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY);
+        table.setPrefSize(927, Screen.getPrimary().getVisualBounds().getHeight() - 100);
+
+        records = CovidDataLoader.getBoroughRecords(start, end, borough, "Date");
+        rows = records.toList();
+        permutations = new int[FIELD_NAMES.length][];
+
         ComboBox field = new ComboBox();
         field.getItems().addAll(FIELD_NAMES);
         field.valueProperty().addListener((observable, oldValue, newValue) -> {
-            orderBy(newValue.toString());
+            orderBy(field.getSelectionModel().getSelectedIndex());
         });
         field.setValue("Date");
-        
+
         HBox hb = new HBox(new Label("Order by: "), field);
-        
+
         root.setTop(hb);
-        root.setCenter(sp);
-        
+        root.setCenter(table);
+
         // JavaFX must have a Scene (window content) inside a Stage (window)
         Scene scene = new Scene(root);
         stage.setTitle(boroughName + " Statistics");
         stage.setScene(scene);
-        
+        logFirstPaint(scene, openStart);
+
         // Show the Stage (window)
         stage.show();
     }
-    
-    private void setColumnNames()
+
+    /**
+     * Adds a column showing one field of each record, or "N/A" if the field is null.
+     * The columns can't be sorted by clicking their headers; the "Order by" box is used instead.
+     */
+    private void addColumn(String name, Function<CovidData, ?> field)
+    {
+        TableColumn<CovidData, Object> column = new TableColumn<>(name);
+        column.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(field.apply(cell.getValue())));
+        column.setCellFactory(c -> new TableCell<CovidData, Object>() {
+            @Override
+            protected void updateItem(Object item, boolean empty)
+            {
+                super.updateItem(item, empty);
+                if(empty)
+                    setText(null);
+                else
+                    setText(item == null ? "N/A" : item.toString());
+            }
+        });
+        column.setSortable(false);
+        table.getColumns().add(column);
+    }
+
+    /**
+     * Orders the table by a field, without querying the database again.
+     */
+    private void orderBy(int field)
     {
-        for(int i = 0; i < 10; i++)
+        int[] order = getPermutation(field);
+        CovidData[] sorted = new CovidData[order.length];
+        for(int i = 0; i < order.length; i++)
         {
-            pane.add(new Label(FIELD_NAMES[i]), i, 1);
+            sorted[i] = rows.get(order[i]);
         }
+        table.getItems().setAll(sorted);
+        table.scrollTo(0);
     }
-    
-    private void orderBy(String field)
+
+    /**
+     * @return the indexes of the records in ascending order of the field, with nulls last.
+     * Records with equal values stay in date order.
+     */
+    private int[] getPermutation(int field)
     {
-        pane.getChildren().clear();
-        setColumnNames();
-        List<CovidData> data = CovidDataLoader.getBoroughData(start, end, boroughName, field.replace(" ", ""));
-        int row = 2;
-        for(CovidData d : data)
+        if(permutations[field] == null)
         {
-            pane.add(new Label(d.getDate().toString()), 0, row);
+            Integer[] indexes = new Integer[records.size()];
+            for(int i = 0; i < indexes.length; i++)
+            {
+                indexes[i] = i;
+            }
+            // The fields after Date are the record columns, in the same order.
+            int column = field - 1;
+            Comparator<Integer> comparator;
+            if(field == 0)
+                comparator = Comparator.comparingInt(records::getEpochDay);
+            else
+                comparator = (x, y) -> {
+                    boolean xNull = records.isNull(x, column);
+                    boolean yNull = records.isNull(y, column);
+                    if(xNull || yNull)
+                        return Boolean.compare(xNull, yNull);
+                    return Integer.compare(records.getInt(x, column), records.getInt(y, column));
+                };
+            // Arrays.sort is stable for objects
+            Arrays.sort(indexes, comparator);
+            int[] permutation = new int[indexes.length];
+            for(int i = 0; i < indexes.length; i++)
+            {
+                permutation[i] = indexes[i];
+            }
+            permutations[field] = permutation;
+        }
+        return permutations[field];
+    }
+
+    /**
+     * Logs how long the window took to be laid out for the first time, and how many nodes
+     * its scene graph has at that point.
+     */
+    private void logFirstPaint(Scene scene, long openStart)
+    {
+        Runnable firstPulse = new Runnable() {
+            private boolean logged = false;
 
-            ArrayList<Label> labels = new ArrayList<>();
-            for(int i = 1; i < 10; i++)
+            @Override
+            public void run()
+            {
+                if(logged)
+                    return;
+                logged = true;
+                double millis = (System.nanoTime() - openStart) / 1e6;
+                LOGGER.info(String.format("%s: %d rows shown with %d nodes, first paint after %.1f ms",
+                    boroughName, table.getItems().size(), countNodes(scene.getRoot()), millis));
+                // Removing the listener while the listeners are being run isn't allowed
+                Platform.runLater(() -> scene.removePostLayoutPulseListener(this));
+            }
+        };
+        scene.addPostLayoutPulseListener(firstPulse);
+    }
+
+    private static int countNodes(Node node)
+    {
+        int count = 1;
+        if(node instanceof Parent)
+        {
+            for(Node child : ((Parent) node).getChildrenUnmodifiable())
             {
-                Label label = new Label("N/A");
-                labels.add(label);
-                pane.add(label, i, row);
+                count += countNodes(child);
             }
-            
-            if(d.getRetailRecreationalGMR() != null)
-                labels.get(0).setText(d.getRetailRecreationalGMR().toString());
-            if(d.getGroceryPharmacyGMR() != null)
-                labels.get(1).setText(d.getGroceryPharmacyGMR().toString());
-            if(d.getParksGMR() != null)
-                labels.get(2).setText(d.getParksGMR().toString());
-            if(d.getTransitGMR() != null)
-                labels.get(3).setText(d.getTransitGMR().toString());
-            if(d.getWorkplacesGMR() != null)
-                labels.get(4).setText(d.getWorkplacesGMR().toString());
-            if(d.getResidentialGMR() != null)
-                labels.get(5).setText(d.getResidentialGMR().toString());
-            if(d.getNewCases() != null)
-                labels.get(6).setText(d.getNewCases().toString());
-            if(d.getTotalCases() != null)
-                labels.get(7).setText(d.getTotalCases().toString());
-            if(d.getNewDeaths() != null)
-                labels.get(8).setText(d.getNewDeaths().toString());
-
-            row++;
         }
+        return count;
     }
 }
@@ -0,0 +1,256 @@
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed size pool of read-only SQLite connections, so several queries can run at once.
+ * Each connection is opened read-only with a shared page cache and PRAGMA query_only set,
+ * and keeps its own cache of prepared statements, closing the least recently used ones
+ * once it holds STATEMENT_CACHE_SIZE, since getSeries puts together a new query for each
+ * combination of boroughs and columns.
+ * The database should be in WAL mode, so that readers never block each other or a writer.
+ *
+ * @author Muhammed Keeka
+ * @version 2024-03-25
+ */
+public class ConnectionPool
+{
+    // The SQLITE_OPEN_READONLY flag.
+    private static final String OPEN_READ_ONLY = "1";
+    // The most prepared statements each connection keeps open.
+    static final int STATEMENT_CACHE_SIZE = 64;
+
+    private final List<PooledConnection> connections;
+    private final BlockingQueue<PooledConnection> idle;
+    // Metrics, readable while the pool is in use.
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong borrows = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicInteger statementsPrepared = new AtomicInteger();
+    private final AtomicInteger statementsReused = new AtomicInteger();
+
+    /**
+     * Opens all the connections in the pool.
+     * @param url the JDBC url of the database.
+     * @param size the number of connections.
+     */
+    public ConnectionPool(String url, int size) throws SQLException
+    {
+        Properties properties = new Properties();
+        properties.setProperty("open_mode", OPEN_READ_ONLY);
+        properties.setProperty("shared_cache", "true");
+        connections = new ArrayList<>();
+        idle = new ArrayBlockingQueue<>(size);
+        for(int i = 0; i < size; i++)
+        {
+            Connection conn = DriverManager.getConnection(url, properties);
+            Statement stmt = conn.createStatement();
+            stmt.execute("PRAGMA query_only = 1;");
+            stmt.close();
+            PooledConnection pooled = new PooledConnection(conn);
+            connections.add(pooled);
+            idle.add(pooled);
+        }
+    }
+
+    /**
+     * Takes a connection from the pool, waiting for one to be released if they're all in use.
+     * Use it in a try-with-resources block so that it is always given back.
+     * @return the connection.
+     */
+    public PooledConnection borrow() throws SQLException
+    {
+        long start = System.nanoTime();
+        PooledConnection conn;
+        try
+        {
+            conn = idle.take();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+        long wait = System.nanoTime() - start;
+        borrows.incrementAndGet();
+        totalWaitNanos.addAndGet(wait);
+        maxWaitNanos.accumulateAndGet(wait, Math::max);
+        active.incrementAndGet();
+        conn.borrowed = true;
+        return conn;
+    }
+
+    /**
+     * Closes every connection. The pool can't be used afterwards.
+     */
+    public void close() throws SQLException
+    {
+        for(PooledConnection conn : connections)
+            conn.closeConnection();
+    }
+
+    /**
+     * @return the number of connections currently borrowed.
+     */
+    public int getActiveCount()
+    {
+        return active.get();
+    }
+
+    /**
+     * @return the number of connections in the pool.
+     */
+    public int getSize()
+    {
+        return connections.size();
+    }
+
+    /**
+     * @return the number of times a connection has been borrowed.
+     */
+    public long getBorrowCount()
+    {
+        return borrows.get();
+    }
+
+    /**
+     * @return the mean time spent waiting for a connection, in milliseconds.
+     */
+    public double getAverageWaitMillis()
+    {
+        long count = borrows.get();
+        return count == 0 ? 0 : totalWaitNanos.get() / 1e6 / count;
+    }
+
+    /**
+     * @return the longest time spent waiting for a connection, in milliseconds.
+     */
+    public double getMaxWaitMillis()
+    {
+        return maxWaitNanos.get() / 1e6;
+    }
+
+    /**
+     * @return the number of statements that have been parsed and prepared, across all connections.
+     */
+    public int getStatementsPrepared()
+    {
+        return statementsPrepared.get();
+    }
+
+    /**
+     * @return the number of times an already prepared statement has been reused, across all connections.
+     */
+    public int getStatementsReused()
+    {
+        return statementsReused.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("ConnectionPool {size=%d, active=%d, borrows=%d, averageWait=%.3fms, maxWait=%.3fms, prepared=%d, reused=%d}",
+            getSize(), getActiveCount(), getBorrowCount(), getAverageWaitMillis(), getMaxWaitMillis(), getStatementsPrepared(), getStatementsReused());
+    }
+
+    /**
+     * A connection borrowed from the pool. Closing it gives it back rather than closing it.
+     */
+    public class PooledConnection implements AutoCloseable
+    {
+        private final Connection conn;
+        // Whether it has been borrowed and not yet given back, so that closing it twice only gives it back once.
+        private boolean borrowed;
+        // Prepared statements are kept and reused, keyed by their SQL, in least recently used order.
+        private final Map<String, PreparedStatement> statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest)
+            {
+                if(size() <= STATEMENT_CACHE_SIZE)
+                    return false;
+                try
+                {
+                    eldest.getValue().close();
+                }
+                catch (SQLException e)
+                {
+                    System.err.println(e.getClass().getName() + ": " + e.getMessage());
+                }
+                return true;
+            }
+        };
+
+        private PooledConnection(Connection conn)
+        {
+            this.conn = conn;
+        }
+
+        /**
+         * @return the underlying connection. It must not be closed.
+         */
+        public Connection getConnection()
+        {
+            return conn;
+        }
+
+        /**
+         * Returns a prepared statement for the query with the parameters bound.
+         * Statements are prepared once per connection and then reused, so SQLite doesn't re-parse and re-plan them.
+         * Only the STATEMENT_CACHE_SIZE most recently used are kept, so the statement is only valid until the next
+         * STATEMENT_CACHE_SIZE different queries have been prepared on the connection.
+         * The statement must not be closed by the caller.
+         * @param query the SQL, with a ? for each parameter.
+         * @param parameters the values to bind. Dates are bound as their ISO text, as they're stored.
+         */
+        public PreparedStatement prepare(String query, Object... parameters) throws SQLException
+        {
+            PreparedStatement stmt = statements.get(query);
+            if(stmt == null)
+            {
+                stmt = conn.prepareStatement(query);
+                statements.put(query, stmt);
+                statementsPrepared.incrementAndGet();
+            }
+            else
+            {
+                statementsReused.incrementAndGet();
+            }
+            for(int i = 0; i < parameters.length; i++)
+                stmt.setString(i + 1, parameters[i].toString());
+            return stmt;
+        }
+
+        /**
+         * Gives the connection back to the pool. Closing it again does nothing.
+         */
+        @Override
+        public void close()
+        {
+            if(!borrowed)
+                return;
+            borrowed = false;
+            active.decrementAndGet();
+            idle.add(this);
+        }
+
+        private void closeConnection() throws SQLException
+        {
+            for(PreparedStatement stmt : statements.values())
+                stmt.close();
+            statements.clear();
+            conn.close();
+        }
+    }
+}
@@ -3,117 +3,120 @@ import java.time.LocalDate;
 /**
  * Represents one record in the COVID dataset.
  * This is essentially one row in the data table. Each column
- * has a corresponding field.
+ * has a corresponding field. The values of records read from the data are
+ * kept in a CovidRecords, and are only boxed when a getter is called.
+ * Records created with the public constructor keep the values they were given.
  * @author KCL Informatics, PPA, Muhammed Keeka
  * @version 2024-03-25
  */ 
 
 public class CovidData {
 
-    //The date the COVID information (cases & deaths) was collected.
-    private LocalDate date;
-    
-    //The COVID information is organised by (London) borough.
-    private String borough;
-    
-    //The COVID information that's collected daily for each London borough.
-    private Integer newCases;
-    private Integer totalCases;
-    private Integer newDeaths;
-    private Integer totalDeaths;
-    
+    //The records this is a view of, and which of them it is, or null if it was created with its values.
+    private final CovidRecords records;
+    private final int row;
+    //The values it was created with, in CovidDataSnapshot's column order, if it isn't a view.
+    private final LocalDate date;
+    private final String borough;
+    private final Integer[] values;
+
     /*
+    Each record holds the date the COVID information (cases & deaths) was collected,
+    the (London) borough, and the COVID information that's collected daily for each borough.
+
     Google analysed location data from Android smartphones to measure movement
     in London.  The data shows percent change from the baseline.  For example, 
     a negative value means there's less human traffic compared to the baseline.
     */
-    private Integer retailRecreationalGMR;
-    private Integer groceryPharmacyGMR;
-    private Integer parksGMR;
-    private Integer transitGMR;
-    private Integer workplacesGMR;
-    private Integer residentialGMR;
-
     public CovidData(LocalDate date, String borough, Integer retailRecreationalGMR, Integer groceryPharmacyGMR,
                         Integer parksGMR, Integer transitGMR, Integer workplacesGMR, Integer residentialGMR,
                         Integer newCases, Integer totalCases, Integer newDeaths, Integer totalDeaths) {
+        records = null;
+        row = -1;
         this.date = date;
         this.borough = borough;
-        this.retailRecreationalGMR = retailRecreationalGMR;
-        this.groceryPharmacyGMR = groceryPharmacyGMR;
-        this.parksGMR = parksGMR;
-        this.transitGMR = transitGMR;
-        this.workplacesGMR = workplacesGMR;
-        this.residentialGMR = residentialGMR;
-        this.newCases = newCases;
-        this.totalCases = totalCases;
-        this.newDeaths = newDeaths;
-        this.totalDeaths = totalDeaths;
+        values = new Integer[] {retailRecreationalGMR, groceryPharmacyGMR, parksGMR, transitGMR, workplacesGMR,
+            residentialGMR, newCases, totalCases, newDeaths, totalDeaths};
+    }
+
+    /**
+     * Creates a view of one row of a CovidRecords.
+     */
+    CovidData(CovidRecords records, int row) {
+        this.records = records;
+        this.row = row;
+        date = null;
+        borough = null;
+        values = null;
+    }
+
+    private Integer getValue(int column) {
+        return records == null ? values[column] : records.getValue(row, column);
     }
 
     public LocalDate getDate() {
-        return date;
+        return records == null ? date : records.getDate(row);
     }
 
     public String getBorough() {
-        return borough;
+        return records == null ? borough : records.getBorough(row);
     }
 
     public Integer getRetailRecreationalGMR() {
-        return retailRecreationalGMR;
+        return getValue(CovidDataSnapshot.RETAIL_RECREATIONAL_GMR);
     }
 
     public Integer getGroceryPharmacyGMR() {
-        return groceryPharmacyGMR;
+        return getValue(CovidDataSnapshot.GROCERY_PHARMACY_GMR);
     }
 
     public Integer getParksGMR() {
-        return parksGMR;
+        return getValue(CovidDataSnapshot.PARKS_GMR);
     }
 
     public Integer getTransitGMR() {
-        return transitGMR;
+        return getValue(CovidDataSnapshot.TRANSIT_GMR);
     }
 
     public Integer getWorkplacesGMR() {
-        return workplacesGMR;
+        return getValue(CovidDataSnapshot.WORKPLACES_GMR);
     }
 
     public Integer getResidentialGMR() {
-        return residentialGMR;
+        return getValue(CovidDataSnapshot.RESIDENTIAL_GMR);
     }
 
     public Integer getNewCases() {
-        return newCases;
+        return getValue(CovidDataSnapshot.NEW_CASES);
     }
 
-        public Integer getTotalCases() {
-        return totalCases;
+    public Integer getTotalCases() {
+        return getValue(CovidDataSnapshot.TOTAL_CASES);
     }
 
     public Integer getNewDeaths() {
-        return newDeaths;
+        return getValue(CovidDataSnapshot.NEW_DEATHS);
     }
 
     public Integer getTotalDeaths() {
-        return totalDeaths;
+        return getValue(CovidDataSnapshot.TOTAL_DEATHS);
     }
 
     @Override
     public String toString() {
         return "Covid Record {" + 
-        " date='" + date +'\'' +
-        ", borough='" + borough +'\'' +
-        ", retailRecreationGMR=" + retailRecreationalGMR +
-        ", groceryPharmacyGMR=" + groceryPharmacyGMR + 
-        ", parksGMR=" + parksGMR + 
-        ", transitGMR=" + transitGMR + 
-        ", workplacesGMR=" + workplacesGMR + 
-        ", residentialGMR=" + residentialGMR + 
-        ", newCases=" + newCases + 
-        ", totalCases=" + totalCases + 
-        ", newDeaths=" + newDeaths + 
-        ", totalDeaths=" + totalDeaths + 
+        " date='" + getDate() +'\'' +
+        ", borough='" + getBorough() +'\'' +
+        ", retailRecreationGMR=" + getRetailRecreationalGMR() +
+        ", groceryPharmacyGMR=" + getGroceryPharmacyGMR() + 
+        ", parksGMR=" + getParksGMR() + 
+        ", transitGMR=" + getTransitGMR() + 
+        ", workplacesGMR=" + getWorkplacesGMR() + 
+        ", residentialGMR=" + getResidentialGMR() + 
+        ", newCases=" + getNewCases() + 
+        ", totalCases=" + getTotalCases() + 
+        ", newDeaths=" + getNewDeaths() + 
+        ", totalDeaths=" + getTotalDeaths() + 
         "}";
     }
 }
@@ -0,0 +1,405 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.logging.Logger;
+
+/**
+ * Imports the London COVID CSV into the CovidData table, replacing what was there.
+ * The file is read with a CsvScanner and the rows are inserted with batched prepared statements,
+ * a large transaction at a time, into a new table. The indexes are only built once every row is in,
+ * and the new table takes the place of the old one in a single transaction at the end, so the
+ * table is never left half imported.
+ * The CSV needs a header line. Its columns are found by name, in any order, using either the names
+ * of the original CSV (date, area_name, retail_recreation, ..., new_cases, total_cases, new_deaths,
+ * total_deaths) or those of the table. The date, borough, new_cases and new_deaths columns are required.
+ * When a row has no TotalCases or TotalDeaths, they are worked out from the borough's previous total
+ * and the row's new cases or deaths, which needs each borough's rows to be in date order.
+ * Run it while the application is closed, e.g. java CovidDataImporter covid_london.csv CovidData.db
+ *
+ * @author Muhammed Keeka
+ * @version 2024-03-25
+ */
+public class CovidDataImporter
+{
+    private static final Logger LOGGER = Logger.getLogger(CovidDataImporter.class.getName());
+    // Rows are sent to SQLite a batch at a time, and committed a transaction at a time.
+    private static final int BATCH_SIZE = 10000;
+    private static final int TRANSACTION_SIZE = 1000000;
+
+    static final String CREATE_TABLE = "CREATE TABLE %s(`Date` TEXT, Borough TEXT, RetailRecreationalGMR INTEGER, GroceryPharmacyGMR INTEGER, ParksGMR INTEGER, TransitGMR INTEGER, WorkplacesGMR INTEGER, ResidentialGMR INTEGER, NewCases INTEGER, TotalCases INTEGER, NewDeaths INTEGER, TotalDeaths INTEGER);";
+    static final String INSERT = "INSERT INTO %s VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?);";
+    private static final String STAGING_TABLE = "CovidData_Import";
+
+    // The names of the CSV's columns in the original data, in the order of the CovidDataSnapshot columns.
+    private static final String[] CSV_NAMES = {"retail_recreation", "grocery_pharmacy", "parks", "transit_stations", "workplaces", "residential", "new_cases", "total_cases", "new_deaths", "total_deaths"};
+    // Borough names as bytes, indexed by BoroughRegistry id, so they can be matched without creating Strings.
+    private static final byte[][] BOROUGH_NAMES = new byte[BoroughRegistry.COUNT][];
+    static {
+        for(int b = 0; b < BoroughRegistry.COUNT; b++)
+            BOROUGH_NAMES[b] = BoroughRegistry.getName(b).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * What an import did and how long it took.
+     */
+    public static class Result
+    {
+        private final long rows;
+        private final long skipped;
+        private final long insertNanos;
+        private final long indexNanos;
+
+        Result(long rows, long skipped, long insertNanos, long indexNanos)
+        {
+            this.rows = rows;
+            this.skipped = skipped;
+            this.insertNanos = insertNanos;
+            this.indexNanos = indexNanos;
+        }
+
+        /**
+         * @return the number of rows imported.
+         */
+        public long getRows()
+        {
+            return rows;
+        }
+
+        /**
+         * @return the number of rows left out because their borough isn't a London borough.
+         */
+        public long getSkipped()
+        {
+            return skipped;
+        }
+
+        /**
+         * @return the time taken to read and insert the rows, in nanoseconds.
+         */
+        public long getInsertNanos()
+        {
+            return insertNanos;
+        }
+
+        /**
+         * @return the time taken to build the indexes and replace the table, in nanoseconds.
+         */
+        public long getIndexNanos()
+        {
+            return indexNanos;
+        }
+
+        /**
+         * @return the rows imported per second, from start to finish.
+         */
+        public double getRowsPerSecond()
+        {
+            return rows / ((insertNanos + indexNanos) / 1e9);
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format(Locale.ROOT, "%d rows (%d skipped) in %.1f s: inserted in %.1f s, indexed in %.1f s, %.0f rows/s",
+                rows, skipped, (insertNanos + indexNanos) / 1e9, insertNanos / 1e9, indexNanos / 1e9, getRowsPerSecond());
+        }
+    }
+
+    private CovidDataImporter()
+    {
+    }
+
+    /**
+     * Imports a CSV file into a database, e.g. java CovidDataImporter covid_london.csv CovidData.db
+     * The database defaults to CovidData.db in the current folder.
+     */
+    public static void main(String[] args) throws Exception
+    {
+        if(args.length < 1)
+        {
+            System.err.println("Usage: java CovidDataImporter <csv file> [database]");
+            return;
+        }
+        String database = args.length > 1 ? args[1] : "CovidData.db";
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + database))
+        {
+            System.out.println(importCsv(args[0], conn));
+        }
+    }
+
+    /**
+     * Replaces the contents of the CovidData table with the rows of a CSV file.
+     * If anything goes wrong, the table is left as it was.
+     * The DatasetCatalog sees that the database has changed and is worked out again on the next startup.
+     * @param csv the path of the CSV file.
+     * @param conn a connection to the database. It is left in auto-commit mode.
+     * @return what was imported, and how quickly.
+     * @throws IOException if the file can't be read.
+     * @throws SQLException if the rows can't be inserted.
+     * @throws IllegalArgumentException if the file isn't in the expected form.
+     */
+    public static Result importCsv(String csv, Connection conn) throws IOException, SQLException
+    {
+        long start = System.nanoTime();
+        long rows;
+        long skipped;
+        long inserted;
+        try (Statement stmt = conn.createStatement())
+        {
+            stmt.execute("PRAGMA journal_mode = WAL;");
+            // With WAL this can't corrupt the database, and makes each commit far cheaper.
+            stmt.execute("PRAGMA synchronous = NORMAL;");
+            // A bigger page cache lets the indexes be sorted in memory.
+            stmt.execute("PRAGMA cache_size = -262144;");
+            stmt.executeUpdate("DROP TABLE IF EXISTS " + STAGING_TABLE + ";");
+            stmt.executeUpdate(String.format(CREATE_TABLE, STAGING_TABLE));
+            conn.setAutoCommit(false);
+            try (CsvScanner scanner = new CsvScanner(new FileInputStream(csv));
+                 PreparedStatement insert = conn.prepareStatement(String.format(INSERT, STAGING_TABLE)))
+            {
+                long[] counts = insertRows(scanner, insert, conn);
+                rows = counts[0];
+                skipped = counts[1];
+                conn.commit();
+            }
+            catch(IOException | SQLException | RuntimeException e)
+            {
+                conn.rollback();
+                conn.setAutoCommit(true);
+                stmt.executeUpdate("DROP TABLE IF EXISTS " + STAGING_TABLE + ";");
+                throw e;
+            }
+            inserted = System.nanoTime();
+
+            // The new table replaces the old one, gets its indexes and has the planner's statistics
+            // refreshed all in one transaction, so readers see either the old table or the finished new one.
+            conn.setAutoCommit(true);
+            stmt.executeUpdate("BEGIN;");
+            try
+            {
+                stmt.executeUpdate("DROP TABLE IF EXISTS CovidData;");
+                stmt.executeUpdate("ALTER TABLE " + STAGING_TABLE + " RENAME TO CovidData;");
+                stmt.executeUpdate(SchemaOptimizer.DATE_BOROUGH_INDEX);
+                stmt.executeUpdate(SchemaOptimizer.BOROUGH_DATE_INDEX);
+                // The statistics are estimated from a sample of each index, rather than all of it.
+                stmt.execute("PRAGMA analysis_limit = 1000;");
+                stmt.executeUpdate("ANALYZE;");
+                stmt.executeUpdate("COMMIT;");
+            }
+            catch(SQLException | RuntimeException e)
+            {
+                // Rolling back puts the old table back, and the staging table, which is then dropped.
+                try
+                {
+                    stmt.executeUpdate("ROLLBACK;");
+                    stmt.executeUpdate("DROP TABLE IF EXISTS " + STAGING_TABLE + ";");
+                }
+                catch(SQLException cleanup)
+                {
+                    e.addSuppressed(cleanup);
+                }
+                throw e;
+            }
+        }
+        Result result = new Result(rows, skipped, inserted - start, System.nanoTime() - inserted);
+        LOGGER.info("Imported " + csv + ": " + result);
+        return result;
+    }
+
+    /**
+     * Reads a CSV file, in the same form as for importCsv, into records without touching the database.
+     * Meant for files of a few new days, which CovidDataLoader.append adds to the table.
+     * Empty totals are left NULL, for append to work out. Rows for places that aren't London boroughs are left out.
+     * @param csv the path of the CSV file.
+     * @return the rows of the file.
+     * @throws IOException if the file can't be read.
+     * @throws IllegalArgumentException if the file isn't in the expected form.
+     */
+    public static CovidRecords readCsv(String csv) throws IOException
+    {
+        try (CsvScanner scanner = new CsvScanner(new FileInputStream(csv)))
+        {
+            if(!scanner.nextLine())
+                throw new IllegalArgumentException("The CSV file is empty");
+            int[] fields = findFields(scanner);
+            int dateField = fields[CovidDataSnapshot.COLUMN_COUNT];
+            int boroughField = fields[CovidDataSnapshot.COLUMN_COUNT + 1];
+            CovidRecords records = new CovidRecords(BoroughRegistry.COUNT);
+            int borough = 0;
+            while(scanner.nextLine())
+            {
+                borough = findBorough(scanner, boroughField, borough);
+                if(borough == -1)
+                {
+                    System.err.println("Skipping record for unknown borough: " + scanner.getString(boroughField));
+                    borough = 0;
+                    continue;
+                }
+                int row = records.addRow(scanner.getEpochDay(dateField), borough);
+                for(int c = 0; c < CovidDataSnapshot.COLUMN_COUNT; c++)
+                {
+                    if(!scanner.isEmpty(fields[c]))
+                        records.set(row, c, scanner.getInt(fields[c]));
+                }
+            }
+            return records;
+        }
+    }
+
+    /**
+     * Inserts every row of the CSV, committing a transaction every TRANSACTION_SIZE rows.
+     * @return the number of rows inserted and the number skipped.
+     */
+    private static long[] insertRows(CsvScanner scanner, PreparedStatement insert, Connection conn) throws IOException, SQLException
+    {
+        if(!scanner.nextLine())
+            throw new IllegalArgumentException("The CSV file is empty");
+        int[] fields = findFields(scanner);
+        int dateField = fields[CovidDataSnapshot.COLUMN_COUNT];
+        int boroughField = fields[CovidDataSnapshot.COLUMN_COUNT + 1];
+
+        // Each borough's running totals, for rows without them, and the date they are for.
+        long[] totalCases = new long[BoroughRegistry.COUNT];
+        long[] totalDeaths = new long[BoroughRegistry.COUNT];
+        long[] lastDays = new long[BoroughRegistry.COUNT];
+        Arrays.fill(lastDays, Long.MIN_VALUE);
+        // Rows are usually grouped by date, so the date's String is reused until it changes.
+        long day = Long.MIN_VALUE;
+        String date = null;
+        int borough = 0;
+        long rows = 0;
+        long skipped = 0;
+        while(scanner.nextLine())
+        {
+            borough = findBorough(scanner, boroughField, borough);
+            if(borough == -1)
+            {
+                skipped++;
+                borough = 0;
+                continue;
+            }
+            long rowDay = scanner.getEpochDay(dateField);
+            if(rowDay != day)
+            {
+                day = rowDay;
+                date = LocalDate.ofEpochDay(day).toString();
+            }
+            insert.setString(1, date);
+            insert.setString(2, BoroughRegistry.getName(borough));
+            for(int c = 0; c < CovidDataSnapshot.COLUMN_COUNT; c++)
+            {
+                if(c == CovidDataSnapshot.TOTAL_CASES || c == CovidDataSnapshot.TOTAL_DEATHS)
+                    continue;
+                if(scanner.isEmpty(fields[c]))
+                    insert.setNull(3 + c, Types.INTEGER);
+                else
+                    insert.setInt(3 + c, scanner.getInt(fields[c]));
+            }
+            setTotal(scanner, insert, fields, CovidDataSnapshot.TOTAL_CASES, CovidDataSnapshot.NEW_CASES, totalCases, borough, lastDays[borough], day);
+            setTotal(scanner, insert, fields, CovidDataSnapshot.TOTAL_DEATHS, CovidDataSnapshot.NEW_DEATHS, totalDeaths, borough, lastDays[borough], day);
+            lastDays[borough] = day;
+            insert.addBatch();
+            rows++;
+            if(rows % BATCH_SIZE == 0)
+                insert.executeBatch();
+            if(rows % TRANSACTION_SIZE == 0)
+                conn.commit();
+        }
+        insert.executeBatch();
+        return new long[] {rows, skipped};
+    }
+
+    /**
+     * Binds a cumulative column, from the CSV if it has it, or from the borough's previous total and
+     * the day's new cases or deaths if not, and keeps the running total up to date.
+     */
+    private static void setTotal(CsvScanner scanner, PreparedStatement insert, int[] fields, int column, int newColumn, long[] totals, int borough, long lastDay, long day) throws SQLException
+    {
+        long total;
+        if(!scanner.isEmpty(fields[column]))
+            total = scanner.getInt(fields[column]);
+        else if(!scanner.isEmpty(fields[newColumn]))
+        {
+            if(day <= lastDay)
+                throw new IllegalArgumentException("Line " + scanner.getLineNumber() + ": " + CovidDataSnapshot.COLUMN_NAMES[column]
+                    + " can only be worked out when each borough's rows are in date order");
+            total = totals[borough] + scanner.getInt(fields[newColumn]);
+        }
+        else
+        {
+            insert.setNull(3 + column, Types.INTEGER);
+            return;
+        }
+        if(total > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Line " + scanner.getLineNumber() + ": " + CovidDataSnapshot.COLUMN_NAMES[column] + " is too large");
+        totals[borough] = total;
+        insert.setInt(3 + column, (int) total);
+    }
+
+    /**
+     * Finds the columns in the header line.
+     * @return the field of each CovidDataSnapshot column, or -1 if the CSV doesn't have it, followed
+     * by the field of the date and then of the borough.
+     */
+    private static int[] findFields(CsvScanner scanner)
+    {
+        int[] fields = new int[CovidDataSnapshot.COLUMN_COUNT + 2];
+        Arrays.fill(fields, -1);
+        for(int field = 0; field < scanner.getFieldCount(); field++)
+        {
+            String name = normalise(scanner.getString(field));
+            for(int c = 0; c < CovidDataSnapshot.COLUMN_COUNT; c++)
+            {
+                if(name.equals(normalise(CSV_NAMES[c])) || name.equals(normalise(CovidDataSnapshot.COLUMN_NAMES[c])))
+                    fields[c] = field;
+            }
+            if(name.equals("date"))
+                fields[CovidDataSnapshot.COLUMN_COUNT] = field;
+            if(name.equals("areaname") || name.equals("borough"))
+                fields[CovidDataSnapshot.COLUMN_COUNT + 1] = field;
+        }
+        if(fields[CovidDataSnapshot.COLUMN_COUNT] == -1 || fields[CovidDataSnapshot.COLUMN_COUNT + 1] == -1
+            || fields[CovidDataSnapshot.NEW_CASES] == -1 || fields[CovidDataSnapshot.NEW_DEATHS] == -1)
+            throw new IllegalArgumentException("The CSV file needs date, area_name (or borough), new_cases and new_deaths columns");
+        // Missing columns are read as empty fields, which are NULL.
+        for(int c = 0; c < fields.length; c++)
+        {
+            if(fields[c] == -1)
+                fields[c] = Integer.MAX_VALUE;
+        }
+        return fields;
+    }
+
+    /**
+     * Lower case, without underscores or spaces, so "new_cases" matches "NewCases".
+     */
+    private static String normalise(String name)
+    {
+        return name.trim().toLowerCase(Locale.ROOT).replace("_", "").replace(" ", "");
+    }
+
+    /**
+     * Looks up the borough of the row. Rows are usually grouped by borough, or cycle through the
+     * boroughs in order, so the previous row's borough is tried first and then the ones after it.
+     * @return the borough's BoroughRegistry id, or -1 if it isn't a London borough.
+     */
+    private static int findBorough(CsvScanner scanner, int field, int previous)
+    {
+        for(int i = 0; i < BoroughRegistry.COUNT; i++)
+        {
+            int b = (previous + i) % BoroughRegistry.COUNT;
+            if(scanner.fieldEquals(field, BOROUGH_NAMES[b]))
+                return b;
+        }
+        return -1;
+    }
+}
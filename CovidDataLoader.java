@@ -1,36 +1,101 @@
+import java.io.File;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.Arrays;
 
 /**
  * Loads the covid data from the database.
  * I have attempted to use the Singleton design pattern.
+ * Queries are normally run against the database, but setSnapshotMode(true)
+ * loads the whole table into memory once and answers them from there instead.
+ * Queries borrow a connection from a pool of read-only connections, so they can run
+ * from several threads at once. Modifications go through a separate writer connection.
+ * New days can be appended without reloading: the snapshot, query engine and catalog are
+ * replaced by copies with the new days added, so readers never see them half updated.
  *
  * @author Muhammed Keeka
  * @version 2024-03-25
  */
 public class CovidDataLoader {
+    // The number of read-only connections, and so the number of queries that can run at once.
+    static final int POOL_SIZE = 4;
+    private static final String DATABASE = "CovidData.db"; //Specify the database, since relative in the main project folder
+    private static final String URL = "jdbc:sqlite:" + DATABASE;
+    private static volatile ConnectionPool pool = null;
+    // Used for modifications only.
     private static Connection conn = null;
+    // An in-memory copy of the table, loaded the first time it is needed.
+    private static volatile CovidDataSnapshot snapshot = null;
+    private static volatile RangeQueryEngine queryEngine = null;
+    // The table's date range, record count and coverage, loaded the first time it is needed.
+    // It is replaced rather than changed, so it can be read without a lock.
+    private static volatile DatasetCatalog catalog = null;
+    // Held while the catalog is loaded, rather than the class, so loading it doesn't wait for the snapshot.
+    private static final Object CATALOG_LOCK = new Object();
+    // When true, queries are answered from the snapshot rather than the database.
+    private static volatile boolean snapshotMode = false;
+
+    // Every query the loader runs. Values are always bound as parameters.
+    static final String TOTAL_CASES_ON_DATE = "SELECT SUM(TotalCases) FROM CovidData WHERE `Date` = ?;";
+    static final String BOROUGH_TOTAL_CASES_ON_DATE = "SELECT TotalCases FROM CovidData WHERE Borough = ? AND `Date` = ?;";
+    static final String MAX_CASES = "SELECT MAX(t2.TotalCases - t1.TotalCases) AS MaxCases FROM CovidData t1 JOIN CovidData t2 on t1.Borough = t2.Borough WHERE t1.Date = ? AND t2.Date = ?;";
+    static final String TOTAL_DEATHS_ON_DATE = "SELECT SUM(TotalDeaths) FROM CovidData WHERE `Date` = ?;";
+    static final String BOROUGH_TOTAL_DEATHS_ON_DATE = "SELECT TotalDeaths FROM CovidData WHERE Borough = ? AND `Date` = ?;";
+    static final String MAX_DEATHS = "SELECT MAX(t2.TotalDeaths - t1.TotalDeaths) AS MaxDeaths FROM CovidData t1 JOIN CovidData t2 on t1.Borough = t2.Borough WHERE t1.Date = ? AND t2.Date = ?;";
+    static final String BOROUGH_DELTAS = "SELECT t2.Borough, t2.TotalCases - t1.TotalCases AS Cases, t2.TotalDeaths - t1.TotalDeaths AS Deaths FROM CovidData t1 JOIN CovidData t2 on t1.Borough = t2.Borough WHERE t1.Date = ? AND t2.Date = ?;";
+    static final String PARKS_AVERAGE = "SELECT AVG(ParksGMR) FROM CovidData WHERE `Date` BETWEEN ? AND ?;";
+    static final String TRANSIT_AVERAGE = "SELECT AVG(TransitGMR) FROM CovidData WHERE `Date` BETWEEN ? AND ?;";
+    static final String CASES_PER_DAY = "SELECT `Date`, SUM(NewCases) FROM CovidData WHERE `Date` BETWEEN ? AND ? GROUP BY `Date`;";
+    // Each borough's last known total of a cumulative column, the sum of the new values after it, and how many days and new values there are after it.
+    static final String LAST_TOTALS = "SELECT t.Borough, t.%1$s, SUM(n.%2$s), COUNT(n.`Date`), COUNT(n.%2$s) "
+        + "FROM (SELECT Borough, MAX(`Date`) AS LastDate FROM CovidData WHERE %1$s IS NOT NULL GROUP BY Borough) l "
+        + "JOIN CovidData t ON t.Borough = l.Borough AND t.`Date` = l.LastDate "
+        + "LEFT JOIN CovidData n ON n.Borough = l.Borough AND n.`Date` > l.LastDate GROUP BY t.Borough;";
+    static final String DEATHS_PER_DAY = "SELECT `Date`, SUM(NewDeaths) FROM CovidData WHERE `Date` BETWEEN ? AND ? GROUP BY `Date`;";
+    // One per CovidDataSnapshot column, in the same order.
+    static final String[] SUM_PER_DAY = new String[CovidDataSnapshot.COLUMN_COUNT];
+    static
+    {
+        for(int column = 0; column < CovidDataSnapshot.COLUMN_COUNT; column++)
+            SUM_PER_DAY[column] = "SELECT `Date`, SUM(" + CovidDataSnapshot.COLUMN_NAMES[column] + ") FROM CovidData WHERE `Date` BETWEEN ? AND ? GROUP BY `Date` ORDER BY `Date`;";
+    }
+    // getSeries selects only the columns and boroughs requested, so its query is put together by seriesQuery.
+    // The ORDER BY column can't be a parameter, so it is appended after checking it against ORDER_COLUMNS.
+    static final String BOROUGH_DATA = "SELECT `Date`, Borough, RetailRecreationalGMR, GroceryPharmacyGMR, ParksGMR, TransitGMR, WorkplacesGMR, ResidentialGMR, NewCases, TotalCases, NewDeaths, TotalDeaths FROM CovidData WHERE Borough = ? AND `Date` BETWEEN ? AND ? ORDER BY ";
+    static final List<String> ORDER_COLUMNS = Arrays.asList("Date", "Borough", "RetailRecreationalGMR", "GroceryPharmacyGMR", "ParksGMR", "TransitGMR", "WorkplacesGMR", "ResidentialGMR", "NewCases", "TotalCases", "NewDeaths", "TotalDeaths");
     
     /**
-     * Establishes a connection to the database.
+     * Establishes the writer connection and the pool of read-only connections to the database.
      */
-    private static void connect()
+    private static synchronized void connect()
     {
+        if(pool != null)
+            return;
         try
         {
             Class.forName("org.sqlite.JDBC"); //Specify the SQLite Java driver
-            conn = DriverManager.getConnection("jdbc:sqlite:CovidData.db"); //Specify the database, since relative in the main project folder
+            conn = DriverManager.getConnection(URL);
+            // WAL lets the readers run alongside each other and alongside a writer.
+            Statement stmt = conn.createStatement();
+            stmt.execute("PRAGMA journal_mode = WAL;");
+            stmt.close();
+            SchemaOptimizer.optimize(conn);
             conn.setAutoCommit(false); // Important as I want control of when data is written
+            pool = new ConnectionPool(URL, POOL_SIZE);
         }
         catch(Exception e)
         {
@@ -40,15 +105,60 @@ public class CovidDataLoader {
     }
     
     /**
-     * Closes the connection to the database.
+     * Loads the SQLite driver, so that connecting doesn't have to.
+     */
+    public static void loadDriver()
+    {
+        try
+        {
+            Class.forName("org.sqlite.JDBC");
+        }
+        catch(ClassNotFoundException e)
+        {
+            System.err.println(e.getClass().getName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Connects to the database and creates its indexes now, rather than when the first query is made.
      */
-    public static void close()
+    public static void open()
+    {
+        connect();
+    }
+
+    /**
+     * Borrows a read-only connection from the pool, connecting first if necessary.
+     * Use it in a try-with-resources block so that it is always given back.
+     */
+    private static ConnectionPool.PooledConnection borrow() throws SQLException
+    {
+        return getConnectionPool().borrow();
+    }
+
+    /**
+     * @return the pool of read-only connections, whose metrics show how busy the database is.
+     */
+    public static ConnectionPool getConnectionPool()
+    {
+        if(pool == null)
+            connect();
+        return pool;
+    }
+
+    /**
+     * Closes the connections to the database.
+     */
+    public static synchronized void close()
     {
         if(!(conn == null))
         {
             try
             {
+                pool.close();
+                pool = null;
                 conn.close();
+                conn = null;
             }
             catch (SQLException ex)
             {
@@ -57,10 +167,285 @@ public class CovidDataLoader {
         }
     }
     
+    /**
+     * Switches between answering queries from the database and from an in-memory snapshot.
+     * The snapshot is loaded from the database when it is first enabled.
+     * @param enabled true to use the snapshot, false to go back to the database.
+     */
+    public static synchronized void setSnapshotMode(boolean enabled)
+    {
+        snapshotMode = enabled && getSnapshot() != null;
+    }
+
+    /**
+     * @return whether queries are currently answered from the in-memory snapshot.
+     */
+    public static boolean isSnapshotMode()
+    {
+        return snapshotMode;
+    }
+
+    /**
+     * Returns the in-memory copy of the table, loading it if necessary.
+     * This works whether or not snapshot mode is enabled.
+     * @return the snapshot, or null if it could not be loaded.
+     */
+    public static synchronized CovidDataSnapshot getSnapshot()
+    {
+        if(snapshot != null)
+            return snapshot;
+        try (ConnectionPool.PooledConnection c = borrow())
+        {
+            snapshot = CovidDataSnapshot.load(c.getConnection());
+        }
+        catch (SQLException e)
+        {
+            System.err.println(e.getClass().getName() + ": " + e.getMessage());
+        }
+        return snapshot;
+    }
+
+    /**
+     * Returns the prefix sum index over the snapshot, building it if necessary.
+     * Use this for date range sums and averages that need to be fast.
+     * @return the query engine, or null if the snapshot could not be loaded.
+     */
+    public static synchronized RangeQueryEngine getQueryEngine()
+    {
+        if(queryEngine == null && getSnapshot() != null)
+            queryEngine = new RangeQueryEngine(snapshot);
+        return queryEngine;
+    }
+    
+    /**
+     * Returns the catalog of the table, reading it from beside the database or working it out if necessary.
+     * Use this for the date range, the record count and whether there is any data for a date range.
+     * Once loaded it is returned without locking, so it never waits for an append or for the snapshot to load.
+     * @return the catalog, or null if it could not be loaded.
+     */
+    public static DatasetCatalog getCatalog()
+    {
+        DatasetCatalog loaded = catalog;
+        if(loaded != null)
+            return loaded;
+        synchronized(CATALOG_LOCK)
+        {
+            if(catalog != null)
+                return catalog;
+            try (ConnectionPool.PooledConnection c = borrow())
+            {
+                catalog = DatasetCatalog.load(new File(DATABASE), c.getConnection());
+            }
+            catch (SQLException e)
+            {
+                System.err.println(e.getClass().getName() + ": " + e.getMessage());
+            }
+            return catalog;
+        }
+    }
+
+    /**
+     * Adds the records of the days after the last day in the table, e.g. the latest daily file,
+     * without reloading anything. Each borough's TotalCases and TotalDeaths must carry on from
+     * the day before: total = previous total + new. Missing totals are worked out that way.
+     * The rows are inserted in one transaction, then the snapshot, query engine and catalog, if loaded,
+     * are extended and the cached results for date ranges reaching the new days are dropped.
+     * @param records the new days, starting the day after the last day in the table, with at most one record per borough and day.
+     * @return the updated catalog.
+     * @throws IllegalArgumentException if the records don't follow on from the table. Nothing is added.
+     */
+    public static synchronized DatasetCatalog append(CovidRecords records) throws SQLException
+    {
+        long start = System.nanoTime();
+        DatasetCatalog current = getCatalog();
+        if(current == null)
+            throw new SQLException("The dataset catalog could not be loaded");
+        if(records.size() == 0)
+            return current;
+        LocalDate previousDay = current.getLastDate();
+        LocalDate firstDay = records.getDate(0);
+        try (ConnectionPool.PooledConnection c = borrow())
+        {
+            checkAppend(records, previousDay, c.getConnection());
+        }
+        if(conn == null)
+            connect();
+        insertRecords(records, conn);
+
+        // Both are replaced before the cache is cleared, so results worked out from the old data aren't cached again.
+        if(snapshot != null)
+        {
+            CovidDataSnapshot appended = snapshot.append(records);
+            if(queryEngine != null)
+                queryEngine = queryEngine.append(appended);
+            snapshot = appended;
+        }
+        DatasetCatalog updated = current.append(records);
+        updated.save(new File(DATABASE));
+        catalog = updated;
+        ResultCache.invalidateFrom(firstDay);
+        Logger.getLogger(CovidDataLoader.class.getName()).info("Appended " + records.size() + " records from " + firstDay + " in "
+            + (System.nanoTime() - start) / 1000000 + " ms");
+        return updated;
+    }
+
+    /**
+     * Reads a CSV file of new days, in the form CovidDataImporter takes, and appends it.
+     * @return the updated catalog.
+     */
+    public static DatasetCatalog appendCsv(String csv) throws IOException, SQLException
+    {
+        return append(CovidDataImporter.readCsv(csv));
+    }
+
+    /**
+     * Checks that records can be appended to a table whose last day is previousDay: they start the day after it,
+     * are in date order without gaps, have exactly one record for each borough on each day, and each borough's totals
+     * carry on from its last known ones. Totals that are missing but can be worked out are filled in.
+     * @param previousDay the last day in the table, or null if it is empty.
+     * @param reader a connection to read each borough's last known totals with.
+     * @throws IllegalArgumentException if the records can't be appended.
+     */
+    static void checkAppend(CovidRecords records, LocalDate previousDay, Connection reader) throws SQLException
+    {
+        if(records.size() == 0)
+            return;
+        LocalDate firstDay = records.getDate(0);
+        if(previousDay != null && !firstDay.equals(previousDay.plusDays(1)))
+            throw new IllegalArgumentException("The new records must start on " + previousDay.plusDays(1) + ", not " + firstDay);
+        boolean[] seen = new boolean[BoroughRegistry.COUNT];
+        int day = records.getEpochDay(0);
+        for(int row = 0; row < records.size(); row++)
+        {
+            int rowDay = records.getEpochDay(row);
+            if(rowDay != day)
+            {
+                checkAllBoroughs(seen, day);
+                if(rowDay != day + 1)
+                    throw new IllegalArgumentException("The new records must be in date order, without gaps: " + records.getDate(row));
+                day = rowDay;
+                Arrays.fill(seen, false);
+            }
+            if(seen[records.getBoroughId(row)])
+                throw new IllegalArgumentException("There is more than one record for " + records.getBorough(row) + " on " + records.getDate(row));
+            seen[records.getBoroughId(row)] = true;
+        }
+        checkAllBoroughs(seen, day);
+
+        long[] cases = new long[BoroughRegistry.COUNT];
+        long[] deaths = new long[BoroughRegistry.COUNT];
+        boolean[] casesKnown = new boolean[BoroughRegistry.COUNT];
+        boolean[] deathsKnown = new boolean[BoroughRegistry.COUNT];
+        if(previousDay != null)
+        {
+            loadLastTotals(reader, CovidDataSnapshot.TOTAL_CASES, CovidDataSnapshot.NEW_CASES, cases, casesKnown);
+            loadLastTotals(reader, CovidDataSnapshot.TOTAL_DEATHS, CovidDataSnapshot.NEW_DEATHS, deaths, deathsKnown);
+        }
+        for(int row = 0; row < records.size(); row++)
+        {
+            checkTotal(records, row, CovidDataSnapshot.TOTAL_CASES, CovidDataSnapshot.NEW_CASES, cases, casesKnown);
+            checkTotal(records, row, CovidDataSnapshot.TOTAL_DEATHS, CovidDataSnapshot.NEW_DEATHS, deaths, deathsKnown);
+        }
+    }
+
+    /**
+     * Inserts the records into the CovidData table in one transaction, rolling it back if any can't be inserted.
+     * @param writer a connection that isn't in auto-commit mode.
+     */
+    static void insertRecords(CovidRecords records, Connection writer) throws SQLException
+    {
+        try (PreparedStatement insert = writer.prepareStatement(String.format(CovidDataImporter.INSERT, "CovidData")))
+        {
+            for(int row = 0; row < records.size(); row++)
+            {
+                insert.setString(1, records.getDate(row).toString());
+                insert.setString(2, records.getBorough(row));
+                for(int c = 0; c < CovidDataSnapshot.COLUMN_COUNT; c++)
+                {
+                    if(records.isNull(row, c))
+                        insert.setNull(3 + c, Types.INTEGER);
+                    else
+                        insert.setInt(3 + c, records.getInt(row, c));
+                }
+                insert.addBatch();
+            }
+            insert.executeBatch();
+            writer.commit();
+        }
+        catch (SQLException e)
+        {
+            writer.rollback();
+            throw e;
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if a borough has no record on the day.
+     */
+    private static void checkAllBoroughs(boolean[] seen, int day)
+    {
+        for(int borough = 0; borough < BoroughRegistry.COUNT; borough++)
+        {
+            if(!seen[borough])
+                throw new IllegalArgumentException("There is no record for " + BoroughRegistry.getName(borough) + " on " + LocalDate.ofEpochDay(day));
+        }
+    }
+
+    /**
+     * Works out each borough's running total of a cumulative column at the end of the table: its last known total
+     * plus the new values since. The total isn't known if the borough has none, or a day since without a new value.
+     */
+    private static void loadLastTotals(Connection reader, int column, int newColumn, long[] totals, boolean[] known) throws SQLException
+    {
+        String query = String.format(LAST_TOTALS, CovidDataSnapshot.COLUMN_NAMES[column], CovidDataSnapshot.COLUMN_NAMES[newColumn]);
+        try (PreparedStatement stmt = reader.prepareStatement(query))
+        {
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next())
+            {
+                int borough = BoroughRegistry.getId(rs.getString(1));
+                if(borough == -1)
+                    continue;
+                totals[borough] = rs.getLong(2) + rs.getLong(3);
+                known[borough] = rs.getInt(4) == rs.getInt(5);
+            }
+            rs.close();
+        }
+    }
+
+    /**
+     * Checks one cumulative column of a record against the borough's running total, and moves the total on.
+     * A borough without a previous total starts from the record's.
+     */
+    private static void checkTotal(CovidRecords records, int row, int column, int newColumn, long[] totals, boolean[] known)
+    {
+        int borough = records.getBoroughId(row);
+        boolean hasNew = !records.isNull(row, newColumn);
+        if(records.isNull(row, column))
+        {
+            if(!known[borough] || !hasNew)
+            {
+                known[borough] = false;
+                return;
+            }
+            long total = totals[borough] + records.getInt(row, newColumn);
+            if(total > Integer.MAX_VALUE)
+                throw new IllegalArgumentException(CovidDataSnapshot.COLUMN_NAMES[column] + " of " + records.getBorough(row) + " on " + records.getDate(row) + " is too large");
+            records.set(row, column, (int) total);
+        }
+        else if(known[borough] && hasNew && records.getInt(row, column) != totals[borough] + records.getInt(row, newColumn))
+        {
+            throw new IllegalArgumentException(CovidDataSnapshot.COLUMN_NAMES[column] + " of " + records.getBorough(row) + " on " + records.getDate(row)
+                + " is " + records.getInt(row, column) + ", but the previous total plus the new ones is " + (totals[borough] + records.getInt(row, newColumn)));
+        }
+        totals[borough] = records.getInt(row, column);
+        known[borough] = true;
+    }
+
     /**
      * Used to execute modification queries.
      */
-    private static void execute(String query)
+    private static synchronized void execute(String query)
     {
         if(conn == null)
             connect();
@@ -79,20 +464,32 @@ public class CovidDataLoader {
     }
 
     /**
-     * Executes the statement below and returns a single Integer, of the field specified.
+     * @return the number of statements that have been parsed and prepared.
+     */
+    public static int getStatementsPrepared()
+    {
+        return getConnectionPool().getStatementsPrepared();
+    }
+
+    /**
+     * @return the number of times an already prepared statement has been reused.
+     */
+    public static int getStatementsReused()
+    {
+        return getConnectionPool().getStatementsReused();
+    }
+
+    /**
+     * Executes the query below and returns a single Integer, of the field specified.
      * This seems like an odd method, but it's quite helpful.
      */
-    private static Integer getInt(String query, String field)
+    private static Integer getInt(String query, String field, Object... parameters)
     {
-        if(conn == null)
-            connect();
-        Statement stmt;
         ResultSet rs;
         Integer result = null;
-        try
+        try (ConnectionPool.PooledConnection c = borrow())
         {
-            stmt = conn.createStatement();
-            rs = stmt.executeQuery(query);
+            rs = c.prepare(query, parameters).executeQuery();
             if(! rs.isClosed())
             {
                 rs.next();
@@ -101,7 +498,6 @@ public class CovidDataLoader {
                     result = null;
                 rs.close();
             }
-            stmt.close();   
         } 
         catch (SQLException e)
         {
@@ -112,26 +508,39 @@ public class CovidDataLoader {
 
     public static Integer getRecordCount()
     {
-        String query = "SELECT COUNT(*) FROM CovidData;";
-        return getInt(query, "COUNT(*)");
+        DatasetCatalog catalog = getCatalog();
+        return catalog == null ? null : catalog.getRecordCount();
     }
 
     public static Integer getCases(LocalDate start, LocalDate end)
     {
-        String query = "SELECT SUM(TotalCases) FROM CovidData WHERE `Date` = '";
-        Integer endTotalDeaths = getInt(query + end + "';", "SUM(TotalCases)");
-        Integer startTotalDeaths = getInt(query + start.minusDays(1) + "';", "SUM(TotalCases)");
-        if(endTotalDeaths != null && startTotalDeaths != null)
-            return endTotalDeaths - startTotalDeaths;
+        if(snapshotMode)
+            return snapshot.getDelta(CovidDataSnapshot.TOTAL_CASES, start, end);
+        Integer endTotalCases = getInt(TOTAL_CASES_ON_DATE, "SUM(TotalCases)", end);
+        Integer startTotalCases = getInt(TOTAL_CASES_ON_DATE, "SUM(TotalCases)", start.minusDays(1));
+        if(endTotalCases != null && startTotalCases != null)
+            return endTotalCases - startTotalCases;
         else
             return null;
     }
 
     public static Integer getCases(LocalDate start, LocalDate end, String borough)
     {
-        String query = "SELECT TotalCases FROM CovidData WHERE Borough = '" + borough + "' AND `Date` = '";
-        Integer endTotalCases = getInt(query + end + "';", "TotalCases");
-        Integer startTotalCases = getInt(query + start.minusDays(1) + "';", "TotalCases");
+        return getCases(start, end, BoroughRegistry.getId(borough));
+    }
+
+    /**
+     * @param borough the borough's BoroughRegistry id.
+     */
+    public static Integer getCases(LocalDate start, LocalDate end, int borough)
+    {
+        if(!BoroughRegistry.isValid(borough))
+            return null;
+        if(snapshotMode)
+            return snapshot.getDelta(CovidDataSnapshot.TOTAL_CASES, start, end, borough);
+        String name = BoroughRegistry.getName(borough);
+        Integer endTotalCases = getInt(BOROUGH_TOTAL_CASES_ON_DATE, "TotalCases", name, end);
+        Integer startTotalCases = getInt(BOROUGH_TOTAL_CASES_ON_DATE, "TotalCases", name, start.minusDays(1));
         if(endTotalCases != null && startTotalCases != null)
             return endTotalCases - startTotalCases;
         else
@@ -140,15 +549,17 @@ public class CovidDataLoader {
     
     public static Integer getMaxCases(LocalDate start, LocalDate end)
     {
-        String query = "SELECT MAX(t2.TotalCases - t1.TotalCases) AS MaxCases FROM CovidData t1 JOIN CovidData t2 on t1.Borough = t2.Borough WHERE t1.Date = '" + start.minusDays(1) + "' AND t2.Date = '" + end +"';";
-        return getInt(query, "MaxCases");
+        if(snapshotMode)
+            return snapshot.getMaxDelta(CovidDataSnapshot.TOTAL_CASES, start, end);
+        return getInt(MAX_CASES, "MaxCases", start.minusDays(1), end);
     }
 
     public static Integer getDeaths(LocalDate start, LocalDate end)
     {
-        String query = "SELECT SUM(TotalDeaths) FROM CovidData WHERE `Date` = '";
-        Integer endTotalDeaths = getInt(query + end + "';", "SUM(TotalDeaths)");
-        Integer startTotalDeaths = getInt(query + start.minusDays(1) + "';", "SUM(TotalDeaths)");
+        if(snapshotMode)
+            return snapshot.getDelta(CovidDataSnapshot.TOTAL_DEATHS, start, end);
+        Integer endTotalDeaths = getInt(TOTAL_DEATHS_ON_DATE, "SUM(TotalDeaths)", end);
+        Integer startTotalDeaths = getInt(TOTAL_DEATHS_ON_DATE, "SUM(TotalDeaths)", start.minusDays(1));
         if(endTotalDeaths != null && startTotalDeaths != null)
             return endTotalDeaths - startTotalDeaths;
         else
@@ -157,9 +568,21 @@ public class CovidDataLoader {
 
     public static Integer getDeaths(LocalDate start, LocalDate end, String borough)
     {
-        String query = "SELECT TotalDeaths FROM CovidData WHERE Borough = '" + borough + "' AND `Date` = '";
-        Integer endTotalDeaths = getInt(query + end + "';", "TotalDeaths");
-        Integer startTotalDeaths = getInt(query + start.minusDays(1) + "';", "TotalDeaths");
+        return getDeaths(start, end, BoroughRegistry.getId(borough));
+    }
+
+    /**
+     * @param borough the borough's BoroughRegistry id.
+     */
+    public static Integer getDeaths(LocalDate start, LocalDate end, int borough)
+    {
+        if(!BoroughRegistry.isValid(borough))
+            return null;
+        if(snapshotMode)
+            return snapshot.getDelta(CovidDataSnapshot.TOTAL_DEATHS, start, end, borough);
+        String name = BoroughRegistry.getName(borough);
+        Integer endTotalDeaths = getInt(BOROUGH_TOTAL_DEATHS_ON_DATE, "TotalDeaths", name, end);
+        Integer startTotalDeaths = getInt(BOROUGH_TOTAL_DEATHS_ON_DATE, "TotalDeaths", name, start.minusDays(1));
         if(endTotalDeaths != null && startTotalDeaths != null)
             return endTotalDeaths - startTotalDeaths;
         else
@@ -167,191 +590,355 @@ public class CovidDataLoader {
     }
 
     public static Integer getMaxDeaths(LocalDate start, LocalDate end) {
-        String query = "SELECT MAX(t2.TotalDeaths - t1.TotalDeaths) AS MaxDeaths FROM CovidData t1 JOIN CovidData t2 on t1.Borough = t2.Borough WHERE t1.Date = '" + start.minusDays(1) + "' AND t2.Date = '" + end + "';";
-        return getInt(query, "MaxDeaths");
+        if(snapshotMode)
+            return snapshot.getMaxDelta(CovidDataSnapshot.TOTAL_DEATHS, start, end);
+        return getInt(MAX_DEATHS, "MaxDeaths", start.minusDays(1), end);
     }
 
+    /**
+     * Returns the change in cases and deaths of every borough over the date range, using a single query.
+     * @param start the start date.
+     * @param end the end date.
+     * @return {cases, deaths} for each borough, indexed by BoroughRegistry id. A delta is null if its total is
+     * missing at either end of the range, and a borough is null if both are.
+     */
+    public static Integer[][] getBoroughDeltas(LocalDate start, LocalDate end)
+    {
+        if(snapshotMode)
+            return snapshot.getBoroughDeltas(start, end);
+        ResultSet rs;
+        Integer[][] data = new Integer[BoroughRegistry.COUNT][];
+        try (ConnectionPool.PooledConnection c = borrow())
+        {
+            rs = c.prepare(BOROUGH_DELTAS, start.minusDays(1), end).executeQuery();
+            if(!rs.isClosed())
+            {
+                while (rs.next())
+                {
+                    Integer cases = rs.getInt("Cases");
+                    if(rs.wasNull())
+                        cases = null;
+                    Integer deaths = rs.getInt("Deaths");
+                    if(rs.wasNull())
+                        deaths = null;
+                    int borough = BoroughRegistry.getId(rs.getString("Borough"));
+                    if ((cases != null || deaths != null) && borough != -1)
+                        data[borough] = new Integer[] {cases, deaths};
+                }
+                rs.close();
+            }
+        }
+        catch (SQLException e)
+        {
+            System.err.println(e.getClass().getName() + ": " + e.getMessage());
+        }
+        return data;
+    }
+
+    /**
+     * Averages are answered by the query engine, which the window builds at startup whatever the mode,
+     * and only by SQL if the engine couldn't be built.
+     */
     public static Integer getParksGMR(LocalDate start, LocalDate end)
     {
-        String query = "SELECT AVG(ParksGMR) FROM CovidData WHERE `Date` BETWEEN '" + start + "' AND '" + end + "';";
-        return getInt(query, "AVG(ParksGMR)");
+        RangeQueryEngine engine = getQueryEngine();
+        if(engine != null)
+            return engine.getAverage(CovidDataSnapshot.PARKS_GMR, start, end);
+        return getInt(PARKS_AVERAGE, "AVG(ParksGMR)", start, end);
     }
 
     public static Integer getTransitGMR(LocalDate start, LocalDate end)
     {
-        String query = "SELECT AVG(TransitGMR) FROM CovidData WHERE `Date` BETWEEN '" + start + "' AND '" + end + "';";
-        return getInt(query, "AVG(TransitGMR)");
+        RangeQueryEngine engine = getQueryEngine();
+        if(engine != null)
+            return engine.getAverage(CovidDataSnapshot.TRANSIT_GMR, start, end);
+        return getInt(TRANSIT_AVERAGE, "AVG(TransitGMR)", start, end);
     }
     
     public static LocalDate getEarliestDate()
     {
-        if(conn == null)
-            connect();
-        Statement stmt;
+        DatasetCatalog catalog = getCatalog();
+        return catalog == null ? null : catalog.getFirstDate();
+    }
+
+    public static LocalDate getLatestDate()
+    {
+        DatasetCatalog catalog = getCatalog();
+        return catalog == null ? null : catalog.getLastDate();
+    }
+    
+    public static Map<LocalDate, Integer> getCasesPerDay(LocalDate start, LocalDate end)
+    {
+        if(snapshotMode)
+            return snapshot.getSumPerDay(CovidDataSnapshot.NEW_CASES, start, end);
         ResultSet rs;
-        LocalDate date = null;
-        try
+        Map<LocalDate, Integer> data = new HashMap<>();
+        try (ConnectionPool.PooledConnection c = borrow())
         {
-            stmt = conn.createStatement();
-            rs = stmt.executeQuery("SELECT MIN(`Date`) FROM CovidData;");
+            rs = c.prepare(CASES_PER_DAY, start, end).executeQuery();
             if(!rs.isClosed())
             {
-                rs.next();
-                date = LocalDate.parse(rs.getString("MIN(`Date`)"));
+                while (rs.next())
+                {
+                    LocalDate date = LocalDate.parse(rs.getString("Date"));
+                    Integer newCases = rs.getInt("SUM(NewCases)");
+                    if (rs.wasNull())
+                        newCases = null;
+                    data.put(date, newCases);
+                    }
                 rs.close();
             }
-            stmt.close();
         }
         catch (SQLException e)
         {
             System.err.println(e.getClass().getName() + ": " + e.getMessage());
         }
-        return date;
+        return data;
     }
 
-    public static LocalDate getLatestDate()
+    public static Map<LocalDate, Integer> getDeathsPerDay(LocalDate start, LocalDate end)
     {
-        if(conn == null)
-            connect();
-        Statement stmt;
+        if(snapshotMode)
+            return snapshot.getSumPerDay(CovidDataSnapshot.NEW_DEATHS, start, end);
         ResultSet rs;
-        LocalDate date = null;
-        try
+        Map<LocalDate, Integer> data = new HashMap<>();
+        try (ConnectionPool.PooledConnection c = borrow())
         {
-            stmt = conn.createStatement();
-            rs = stmt.executeQuery("SELECT MAX(`Date`) FROM CovidData;");
+            rs = c.prepare(DEATHS_PER_DAY, start, end).executeQuery();
             if(!rs.isClosed())
             {
-                rs.next();
-                date = LocalDate.parse(rs.getString("MAX(`Date`)"));
+                while (rs.next())
+                {
+                    LocalDate date = LocalDate.parse(rs.getString("Date"));
+                    Integer newDeaths = rs.getInt("SUM(NewDeaths)");
+                    if (rs.wasNull())
+                        newDeaths = null;
+                    data.put(date, newDeaths);
+                    }
                 rs.close();
             }
-            stmt.close();
         }
         catch (SQLException e)
         {
             System.err.println(e.getClass().getName() + ": " + e.getMessage());
         }
-        return date;
+        return data;
     }
-    
-    public static Map<LocalDate, Integer> getCasesPerDay(LocalDate start, LocalDate end)
+
+    /**
+     * The same as getCasesPerDay, but in date order and without a map.
+     */
+    public static DailySeries getCasesSeries(LocalDate start, LocalDate end)
     {
-        if(conn == null)
-            connect();
-        Statement stmt;
+        return getSumSeries(CovidDataSnapshot.NEW_CASES, start, end);
+    }
+
+    /**
+     * The same as getDeathsPerDay, but in date order and without a map.
+     */
+    public static DailySeries getDeathsSeries(LocalDate start, LocalDate end)
+    {
+        return getSumSeries(CovidDataSnapshot.NEW_DEATHS, start, end);
+    }
+
+    /**
+     * @param column one of the CovidDataSnapshot column constants.
+     * @return the sum of the column across all boroughs on each day between start and end.
+     */
+    public static DailySeries getSumSeries(int column, LocalDate start, LocalDate end)
+    {
+        DailySeries.Builder series = new DailySeries.Builder();
+        forEachSumPerDay(column, start, end, series);
+        return series.build();
+    }
+
+    /**
+     * Passes the sum of the column across all boroughs on each day between start and end to the
+     * consumer, in date order, as the rows are read. Days whose sum is NULL are skipped.
+     * @param column one of the CovidDataSnapshot column constants.
+     */
+    public static void forEachSumPerDay(int column, LocalDate start, LocalDate end, DailySeries.DayConsumer consumer)
+    {
+        if(snapshotMode)
+        {
+            snapshot.forEachSumPerDay(column, start, end, consumer);
+            return;
+        }
         ResultSet rs;
-        Map<LocalDate, Integer> data = new HashMap<>();
-        try
+        try (ConnectionPool.PooledConnection c = borrow())
         {
-            stmt = conn.createStatement();
-            rs = stmt.executeQuery("SELECT `Date`, SUM(NewCases) FROM CovidData WHERE `Date` BETWEEN '" + start + "' AND '" + end + "' GROUP BY `Date`;");
+            rs = c.prepare(SUM_PER_DAY[column], start, end).executeQuery();
             if(!rs.isClosed())
             {
                 while (rs.next())
                 {
-                    LocalDate date = LocalDate.parse(rs.getString("Date"));
-                    Integer newCases = rs.getInt("SUM(NewCases)");
-                    if (rs.wasNull())
-                        newCases = null;
-                    data.put(date, newCases);
-                    }
+                    int sum = rs.getInt(2);
+                    if(!rs.wasNull())
+                        consumer.accept(LocalDate.parse(rs.getString(1)).toEpochDay(), sum);
+                }
                 rs.close();
             }
-            stmt.close();
         }
         catch (SQLException e)
         {
             System.err.println(e.getClass().getName() + ": " + e.getMessage());
         }
-        return data;
     }
 
-    public static Map<LocalDate, Integer> getDeathsPerDay(LocalDate start, LocalDate end)
+    /**
+     * Fetches every series in the request with a single query, reading the rows once in date order.
+     * @return the series, in the order they were added to the request.
+     */
+    public static DailySeries[] getSeries(SeriesRequest request)
     {
-        if(conn == null)
-            connect();
-        Statement stmt;
+        if(snapshotMode)
+            return snapshot.getSeries(request);
+        SeriesRequest.Accumulator series = request.newAccumulator();
+        if(request.size() == 0)
+            return series.finish();
+        int[] columns = seriesColumns(request);
+        int columnCount = columns.length;
+        List<Object> parameters = new ArrayList<>();
+        String query = seriesQuery(request, columns, parameters);
         ResultSet rs;
-        Map<LocalDate, Integer> data = new HashMap<>();
-        try
+        try (ConnectionPool.PooledConnection c = borrow())
         {
-            stmt = conn.createStatement();
-            rs = stmt.executeQuery("SELECT `Date`, SUM(NewDeaths) FROM CovidData WHERE `Date` BETWEEN '" + start + "' AND '" + end + "' GROUP BY `Date`;");
+            rs = c.prepare(query, parameters.toArray()).executeQuery();
             if(!rs.isClosed())
             {
                 while (rs.next())
                 {
-                    LocalDate date = LocalDate.parse(rs.getString("Date"));
-                    Integer newDeaths = rs.getInt("SUM(NewDeaths)");
-                    if (rs.wasNull())
-                        newDeaths = null;
-                    data.put(date, newDeaths);
+                    long day = LocalDate.parse(rs.getString(1)).toEpochDay();
+                    String name = rs.getString(2);
+                    int borough = name == null ? SeriesRequest.ALL_BOROUGHS : BoroughRegistry.getId(name);
+                    if(borough == -1 && name != null)
+                        continue;
+                    // Each column is followed by the number of values it sums.
+                    for(int i = 0; i < columnCount; i++)
+                    {
+                        int count = rs.getInt(2 * i + 4);
+                        if(count > 0)
+                            series.add(day, borough, columns[i], rs.getLong(2 * i + 3), count);
                     }
+                }
                 rs.close();
             }
-            stmt.close();
         }
         catch (SQLException e)
         {
             System.err.println(e.getClass().getName() + ": " + e.getMessage());
         }
-        return data;
+        return series.finish();
+    }
+
+    /**
+     * @return the columns the request uses, in order. Reading a column through JDBC costs far more than
+     * SQLite takes to find it, so getSeries only reads these.
+     */
+    static int[] seriesColumns(SeriesRequest request)
+    {
+        int[] columns = new int[CovidDataSnapshot.COLUMN_COUNT];
+        int columnCount = 0;
+        for(int column = 0; column < CovidDataSnapshot.COLUMN_COUNT; column++)
+        {
+            if(request.usesColumn(column))
+                columns[columnCount++] = column;
+        }
+        return Arrays.copyOf(columns, columnCount);
+    }
+
+    /**
+     * Puts together the query for getSeries, and adds its parameters to the list.
+     * Rows of the boroughs requested come with a count of 1 or 0 after each column, depending on
+     * whether it is NULL. If all of London is requested, each day also has a row with a NULL
+     * borough holding the sums and counts of the columns across the boroughs, so SQLite does the adding up.
+     */
+    static String seriesQuery(SeriesRequest request, int[] columns, List<Object> parameters)
+    {
+        StringBuilder query = new StringBuilder();
+        StringBuilder boroughs = new StringBuilder();
+        for(int id = 0; id < BoroughRegistry.COUNT; id++)
+        {
+            if(request.usesBorough(id))
+                boroughs.append(boroughs.length() == 0 ? "?" : ", ?");
+        }
+        if(boroughs.length() > 0)
+        {
+            query.append("SELECT `Date`, Borough");
+            for(int column : columns)
+            {
+                String name = CovidDataSnapshot.COLUMN_NAMES[column];
+                query.append(", ").append(name).append(", ").append(name).append(" IS NOT NULL");
+            }
+            query.append(" FROM CovidData WHERE `Date` BETWEEN ? AND ? AND Borough IN (").append(boroughs).append(")");
+            parameters.add(request.getStart());
+            parameters.add(request.getEnd());
+            for(int id = 0; id < BoroughRegistry.COUNT; id++)
+            {
+                if(request.usesBorough(id))
+                    parameters.add(BoroughRegistry.getName(id));
+            }
+        }
+        if(request.usesBorough(SeriesRequest.ALL_BOROUGHS))
+        {
+            if(query.length() > 0)
+                query.append(" UNION ALL ");
+            query.append("SELECT `Date`, NULL");
+            for(int column : columns)
+            {
+                String name = CovidDataSnapshot.COLUMN_NAMES[column];
+                query.append(", SUM(").append(name).append("), COUNT(").append(name).append(")");
+            }
+            query.append(" FROM CovidData WHERE `Date` BETWEEN ? AND ? GROUP BY `Date`");
+            parameters.add(request.getStart());
+            parameters.add(request.getEnd());
+        }
+        return query.append(" ORDER BY 1;").toString();
     }
 
     public static List<CovidData> getBoroughData(LocalDate start, LocalDate end, String borough, String order)
     {
-        if(conn == null)
-            connect();
-        Statement stmt;
+        return getBoroughRecords(start, end, BoroughRegistry.getId(borough), order).toList();
+    }
+
+    /**
+     * The same as getBoroughData, but in the compact form, which needs no objects per row.
+     * @param borough the borough's BoroughRegistry id.
+     */
+    public static CovidRecords getBoroughRecords(LocalDate start, LocalDate end, int borough, String order)
+    {
+        if(snapshotMode)
+            return snapshot.getBoroughRecords(start, end, borough, order);
         ResultSet rs;
-        List<CovidData> data = new ArrayList<>();
+        CovidRecords data = new CovidRecords((int) Math.max(1, ChronoUnit.DAYS.between(start, end) + 1));
+        // Only known column names may be put into the query.
+        if(!ORDER_COLUMNS.contains(order))
+        {
+            System.err.println("Cannot order by unknown column: " + order);
+            return data;
+        }
+        if(!BoroughRegistry.isValid(borough))
+            return data;
         if(order.equals("Date"))
             order = "`Date`";
-        try
+        try (ConnectionPool.PooledConnection c = borrow())
         {
-            stmt = conn.createStatement();
-            rs = stmt.executeQuery("SELECT * FROM CovidData WHERE Borough = '" + borough + "' AND `Date` BETWEEN '" + start + "' AND '" + end + "' ORDER BY " + order + ";");
+            rs = c.prepare(BOROUGH_DATA + order + ";", BoroughRegistry.getName(borough), start, end).executeQuery();
             if(!rs.isClosed())
             {
                 while (rs.next())
                 {
-                    LocalDate date = LocalDate.parse(rs.getString("Date"));
-                    Integer retailRecreationalGMR = rs.getInt("RetailRecreationalGMR");
-                    if (rs.wasNull())
-                        retailRecreationalGMR = null;
-                    Integer groceryPharmacyGMR = rs.getInt("GroceryPharmacyGMR");
-                    if (rs.wasNull())
-                        groceryPharmacyGMR = null;
-                    Integer parksGMR = rs.getInt("ParksGMR");
-                    if (rs.wasNull())
-                        parksGMR = null;
-                    Integer transitGMR = rs.getInt("TransitGMR");
-                    if (rs.wasNull())
-                        transitGMR = null;
-                    Integer workplacesGMR = rs.getInt("WorkplacesGMR");
-                    if (rs.wasNull())
-                        workplacesGMR = null;
-                    Integer residentialGMR = rs.getInt("ResidentialGMR");
-                    if (rs.wasNull())
-                        residentialGMR = null;
-                    Integer newCases = rs.getInt("NewCases");
-                    if (rs.wasNull())
-                        newCases = null;
-                    Integer totalCases = rs.getInt("TotalCases");
-                    if (rs.wasNull())
-                        totalCases = null;
-                    Integer newDeaths = rs.getInt("NewDeaths");
-                    if (rs.wasNull())
-                        newDeaths = null;
-                    Integer totalDeaths = rs.getInt("TotalDeaths");
-                    if (rs.wasNull())
-                        totalDeaths = null;
-                    data.add(new CovidData(date, borough, retailRecreationalGMR, groceryPharmacyGMR, parksGMR, transitGMR, workplacesGMR, residentialGMR, newCases, totalCases, newDeaths, totalDeaths));
+                    int row = data.addRow(LocalDate.parse(rs.getString(1)).toEpochDay(), borough);
+                    // The data columns follow Date and Borough, in CovidDataSnapshot's order.
+                    for(int column = 0; column < CovidRecords.COLUMN_COUNT; column++)
+                    {
+                        int value = rs.getInt(column + 3);
+                        if(!rs.wasNull())
+                            data.set(row, column, value);
+                    }
                 }
                 rs.close();
             }
-            stmt.close();
         }
         catch (SQLException e)
         {
@@ -0,0 +1,32 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+
+/**
+ * Runs every CovidDataLoaderTest case against the in-memory snapshot,
+ * to make sure it gives exactly the same answers as the database.
+ *
+ * @author  Muhammed Keeka
+ * @version 2024-03-25
+ */
+public class CovidDataLoaderSnapshotTest extends CovidDataLoaderTest
+{
+    /**
+     * Switches the loader to the snapshot before every test case method.
+     */
+    @BeforeEach
+    @Override
+    public void setUp()
+    {
+        CovidDataLoader.setSnapshotMode(true);
+    }
+
+    /**
+     * Switches the loader back to the database after every test case method.
+     */
+    @AfterEach
+    @Override
+    public void tearDown()
+    {
+        CovidDataLoader.setSnapshotMode(false);
+    }
+}
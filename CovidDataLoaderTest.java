@@ -1,3 +1,9 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
 import java.time.LocalDate;
 import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.AfterEach;
@@ -177,6 +183,66 @@ public class CovidDataLoaderTest
         assertEquals(4, data.get(LocalDate.of(2023, 2, 1)));
     }
 
+    /**
+     * Ensure that the per-day series are in date order and match getCasesPerDay() and getDeathsPerDay().
+     */
+    @Test
+    public void assertDailySeries()
+    {
+        LocalDate start = LocalDate.of(2023, 1, 1);
+        LocalDate end = LocalDate.of(2023, 2, 1);
+        DailySeries cases = CovidDataLoader.getCasesSeries(start, end);
+        assertEquals(32, cases.size());
+        assertEquals(start, cases.getDate(0));
+        assertEquals(328, cases.getInt(0));
+        assertEquals(199, cases.getInt(14));
+        assertEquals(379, cases.getInt(31));
+        Map<LocalDate, Integer> deathsPerDay = CovidDataLoader.getDeathsPerDay(start, end);
+        DailySeries deaths = CovidDataLoader.getDeathsSeries(start, end);
+        long[] previous = {Long.MIN_VALUE};
+        deaths.forEach((day, value) -> {
+            assertTrue(day > previous[0]);
+            previous[0] = day;
+            assertEquals(deathsPerDay.get(LocalDate.ofEpochDay(day)), value);
+        });
+        assertEquals(deathsPerDay.size(), deaths.getValueCount());
+    }
+
+    /**
+     * Ensure that a SeriesRequest fetches the same values as the separate queries, and that
+     * its rolling averages are those of the daily values.
+     */
+    @Test
+    public void assertSeriesRequest()
+    {
+        LocalDate start = LocalDate.of(2022, 1, 1);
+        LocalDate end = LocalDate.of(2022, 3, 1);
+        int sutton = BoroughRegistry.getId("Sutton");
+        SeriesRequest request = new SeriesRequest(start, end);
+        int cases = request.add(SeriesRequest.ALL_BOROUGHS, CovidDataSnapshot.NEW_CASES, 1);
+        int daily = request.add(sutton, CovidDataSnapshot.NEW_DEATHS, 1);
+        int weekly = request.add(sutton, CovidDataSnapshot.NEW_DEATHS, 7);
+        DailySeries[] series = CovidDataLoader.getSeries(request);
+        assertEquals(3, series.length);
+
+        DailySeries expected = CovidDataLoader.getCasesSeries(start, end);
+        assertEquals(expected.size(), series[cases].size());
+        assertEquals(expected.getStartDay(), series[cases].getStartDay());
+        for(int i = 0; i < expected.size(); i++)
+            assertEquals(expected.getInt(i), series[cases].getInt(i));
+
+        for(int i = 0; i < series[daily].size(); i++)
+        {
+            LocalDate date = series[daily].getDate(i);
+            assertEquals(CovidDataLoader.getBoroughRecords(date, date, sutton, "Date").getInt(0, CovidDataSnapshot.NEW_DEATHS), series[daily].getInt(i));
+            long sum = 0;
+            for(int j = Math.max(0, i - 6); j <= i; j++)
+                sum += series[daily].getInt(j);
+            assertEquals(Math.round(sum / (double) (i - Math.max(0, i - 6) + 1)), series[weekly].getInt(i));
+        }
+        assertThrows(IllegalArgumentException.class, () -> request.add(BoroughRegistry.COUNT, CovidDataSnapshot.NEW_CASES, 1));
+    }
+
     /**
      * Ensure that the borough data is being fetched correctly.
      */
@@ -235,4 +301,352 @@ public class CovidDataLoaderTest
             assertNull(d.getResidentialGMR());
         }
     }
+
+    /**
+     * Ensure that borough names and order columns can't change the meaning of a query.
+     */
+    @Test
+    public void assertQueriesAreNotInjectable()
+    {
+        assertNull(CovidDataLoader.getCases(LocalDate.of(2023, 1, 1), LocalDate.of(2023, 2, 1), "Sutton' OR '1'='1"));
+        assertTrue(CovidDataLoader.getBoroughData(LocalDate.of(2022, 5, 1), LocalDate.of(2022, 5, 31), "Sutton", "Date; DROP TABLE CovidData").isEmpty());
+        assertEquals(31, CovidDataLoader.getBoroughData(LocalDate.of(2022, 5, 1), LocalDate.of(2022, 5, 31), "Sutton", "NewCases").size());
+    }
+
+    /**
+     * Ensure that the compact borough records hold the same data as the CovidData objects.
+     */
+    @Test
+    public void assertBoroughRecords()
+    {
+        CovidRecords records = CovidDataLoader.getBoroughRecords(LocalDate.of(2022, 5, 1), LocalDate.of(2022, 5, 31), BoroughRegistry.getId("Sutton"), "Date");
+        assertEquals(31, records.size());
+        CovidRecords.Cursor cursor = records.cursor();
+        assertTrue(cursor.next());
+        assertEquals(LocalDate.of(2022, 5, 1).toEpochDay(), cursor.getEpochDay());
+        assertEquals("Sutton", cursor.getBorough());
+        assertEquals(-20, cursor.getInt(CovidDataSnapshot.RETAIL_RECREATIONAL_GMR));
+        assertEquals(72879, cursor.getInt(CovidDataSnapshot.TOTAL_CASES));
+        assertEquals(565, cursor.getInt(CovidDataSnapshot.TOTAL_DEATHS));
+        int rows = 1;
+        while(cursor.next())
+            rows++;
+        assertEquals(31, rows);
+        assertEquals(LocalDate.of(2022, 5, 16), records.get(15).getDate());
+        assertEquals(73320, records.get(15).getTotalCases());
+
+        records = CovidDataLoader.getBoroughRecords(LocalDate.of(2023, 1, 1), LocalDate.of(2023, 2, 1), BoroughRegistry.getId("Sutton"), "Date");
+        cursor = records.cursor();
+        while(cursor.next())
+        {
+            assertTrue(cursor.isNull(CovidDataSnapshot.PARKS_GMR));
+            assertFalse(cursor.isNull(CovidDataSnapshot.TOTAL_CASES));
+        }
+    }
+
+    /**
+     * Ensure that boroughs can be looked up by name or FXML id, and that queries by id match queries by name.
+     */
+    @Test
+    public void assertBoroughRegistry()
+    {
+        assertEquals(33, BoroughRegistry.COUNT);
+        int id = BoroughRegistry.getId("Kensington And Chelsea");
+        assertNotEquals(-1, id);
+        assertEquals(id, BoroughRegistry.getId("Kensington+And+Chelsea"));
+        assertEquals("Kensington+And+Chelsea", BoroughRegistry.getFxmlId(id));
+        assertEquals(-1, BoroughRegistry.getId("Atlantis"));
+        int sutton = BoroughRegistry.getId("Sutton");
+        LocalDate start = LocalDate.of(2022, 5, 1);
+        LocalDate end = LocalDate.of(2022, 5, 31);
+        assertEquals(CovidDataLoader.getCases(start, end, "Sutton"), CovidDataLoader.getCases(start, end, sutton));
+        assertEquals(CovidDataLoader.getDeaths(start, end, "Sutton"), CovidDataLoader.getDeaths(start, end, sutton));
+        assertEquals(CovidDataLoader.getCases(start, end, sutton), CovidDataLoader.getBoroughDeltas(start, end)[sutton][0]);
+        assertEquals(CovidDataLoader.getDeaths(start, end, sutton), CovidDataLoader.getBoroughDeltas(start, end)[sutton][1]);
+    }
+
+    /**
+     * Ensure that the catalog describes the table, and that a saved catalog is read back the same.
+     */
+    @Test
+    public void assertDatasetCatalog() throws Exception
+    {
+        DatasetCatalog catalog = CovidDataLoader.getCatalog();
+        assertEquals(36399, catalog.getRecordCount());
+        assertEquals(LocalDate.of(2020, 2, 3), catalog.getFirstDate());
+        assertEquals(LocalDate.of(2023, 2, 9), catalog.getLastDate());
+        int sutton = BoroughRegistry.getId("Sutton");
+        assertEquals(LocalDate.of(2023, 2, 9), catalog.getLastDate(sutton));
+        // The mobility reports stopped before the case and death counts did.
+        assertTrue(catalog.getLastValueDate(CovidDataSnapshot.PARKS_GMR).isBefore(LocalDate.of(2023, 1, 1)));
+        assertFalse(catalog.hasValues(CovidDataSnapshot.PARKS_GMR, LocalDate.of(2023, 1, 1), LocalDate.of(2023, 2, 1)));
+        assertNull(CovidDataLoader.getParksGMR(LocalDate.of(2023, 1, 1), LocalDate.of(2023, 2, 1)));
+        assertTrue(catalog.covers(CovidDataSnapshot.TOTAL_CASES, LocalDate.of(2022, 12, 31), LocalDate.of(2023, 2, 1)));
+        assertFalse(catalog.covers(CovidDataSnapshot.TOTAL_CASES, LocalDate.of(2020, 1, 1), LocalDate.of(2020, 6, 1)));
+
+        CovidDataSnapshot snapshot = CovidDataLoader.getSnapshot();
+        for(int c = 0; c < CovidDataSnapshot.COLUMN_COUNT; c++)
+        {
+            int values = 0;
+            for(int b = 0; b < BoroughRegistry.COUNT; b++)
+            {
+                for(int day = 0; day < snapshot.getDayCount(); day++)
+                {
+                    if(snapshot.hasValue(c, b, day))
+                        values++;
+                }
+            }
+            assertEquals(values, catalog.getValueCount(c), CovidDataSnapshot.COLUMN_NAMES[c]);
+        }
+
+        File database = createTempFile("CovidData", ".db");
+        DatasetCatalog.getFile(database).deleteOnExit();
+        catalog.save(database);
+        DatasetCatalog saved = DatasetCatalog.load(database, null);
+        assertEquals(catalog.getRecordCount(), saved.getRecordCount());
+        assertEquals(catalog.getLastDate(), saved.getLastDate());
+        assertEquals(catalog.getRecordCount(sutton), saved.getRecordCount(sutton));
+        assertEquals(catalog.getFirstValueDate(CovidDataSnapshot.TRANSIT_GMR), saved.getFirstValueDate(CovidDataSnapshot.TRANSIT_GMR));
+        assertEquals(catalog.getLastValueDate(CovidDataSnapshot.TRANSIT_GMR), saved.getLastValueDate(CovidDataSnapshot.TRANSIT_GMR));
+    }
+
+    /**
+     * Ensure that a CSV file is imported in full, with missing totals worked out and unknown boroughs left out.
+     */
+    @Test
+    public void assertCsvImport() throws Exception
+    {
+        File csv = writeCsv("date,area_name,area_code,retail_recreation,grocery_pharmacy,parks,transit_stations,workplaces,residential,new_cases,total_cases,new_deaths,total_deaths\r\n"
+            + "2020-02-03,\"Sutton\",E09000029,-5,3,,7,8,9,10,,1,\r\n"
+            + "2020-02-03,Atlantis,E00000000,1,1,1,1,1,1,1,1,1,1\r\n"
+            + "2020-02-04,Sutton,E09000029,,,,,,,5.0,,2,\r\n"
+            + "2020-02-04,barking and dagenham,E09000002,1,2,3,4,5,6,7,100,0,5");
+        try (Connection conn = openTempDatabase())
+        {
+            CovidDataImporter.Result result = CovidDataImporter.importCsv(csv.getPath(), conn);
+            assertEquals(3, result.getRows());
+            assertEquals(1, result.getSkipped());
+            CovidDataSnapshot snapshot = CovidDataSnapshot.load(conn);
+            int sutton = BoroughRegistry.getId("Sutton");
+            assertEquals(-5, snapshot.getValue(CovidDataSnapshot.RETAIL_RECREATIONAL_GMR, sutton, LocalDate.of(2020, 2, 3)));
+            assertNull(snapshot.getValue(CovidDataSnapshot.PARKS_GMR, sutton, LocalDate.of(2020, 2, 3)));
+            assertEquals(15, snapshot.getValue(CovidDataSnapshot.TOTAL_CASES, sutton, LocalDate.of(2020, 2, 4)));
+            assertEquals(3, snapshot.getValue(CovidDataSnapshot.TOTAL_DEATHS, sutton, LocalDate.of(2020, 2, 4)));
+            assertEquals(100, snapshot.getValue(CovidDataSnapshot.TOTAL_CASES, BoroughRegistry.getId("Barking And Dagenham"), LocalDate.of(2020, 2, 4)));
+
+            // A file that can't be imported leaves the table as it was.
+            File invalid = writeCsv("date,area_name,new_cases,new_deaths\n2020-02-05,Sutton,x,1\n");
+            assertThrows(NumberFormatException.class, () -> CovidDataImporter.importCsv(invalid.getPath(), conn));
+            assertEquals(3, CovidDataSnapshot.load(conn).getRecordCount());
+        }
+    }
+
+    // The days the append tests start from, and the day they append.
+    private static final String APPEND_HEADER = "date,area_name,retail_recreation,grocery_pharmacy,parks,transit_stations,workplaces,residential,new_cases,total_cases,new_deaths,total_deaths\n";
+    private static final String APPEND_DAYS = "2020-02-03,Sutton,1,2,3,4,5,6,10,10,1,1\n"
+        + "2020-02-03,Camden,1,2,3,4,5,6,20,20,2,2\n"
+        + "2020-02-04,Sutton,2,3,4,5,6,7,5,15,0,1\n"
+        + "2020-02-04,Camden,,,,,,,1,21,1,3\n";
+    private static final String APPEND_NEW_DAY = "2020-02-05,Camden,3,4,5,6,7,8,4,25,0,3\n"
+        + "2020-02-05,Sutton,3,4,,6,7,8,2,17,1,2\n";
+    private static final LocalDate APPEND_FIRST = LocalDate.of(2020, 2, 3);
+    private static final LocalDate APPEND_LAST = LocalDate.of(2020, 2, 5);
+
+    /**
+     * Ensure that appending a day to a snapshot gives the same snapshot as loading every day, and leaves the old one as it was.
+     */
+    @Test
+    public void assertSnapshotAppend() throws Exception
+    {
+        try (Connection before = importToTempDatabase(APPEND_HEADER + APPEND_DAYS);
+             Connection after = importToTempDatabase(APPEND_HEADER + APPEND_DAYS + APPEND_NEW_DAY))
+        {
+            CovidDataSnapshot snapshot = CovidDataSnapshot.load(before);
+            CovidDataSnapshot appended = snapshot.append(readRecords(APPEND_HEADER + APPEND_NEW_DAY));
+            CovidDataSnapshot loaded = CovidDataSnapshot.load(after);
+            assertEquals(loaded.getRecordCount(), appended.getRecordCount());
+            assertEquals(loaded.getDayCount(), appended.getDayCount());
+            for(int column = 0; column < CovidDataSnapshot.COLUMN_COUNT; column++)
+            {
+                for(int borough = 0; borough < BoroughRegistry.COUNT; borough++)
+                {
+                    for(LocalDate date = APPEND_FIRST; !date.isAfter(APPEND_LAST); date = date.plusDays(1))
+                        assertEquals(loaded.getValue(column, borough, date), appended.getValue(column, borough, date));
+                }
+            }
+            assertEquals(4, snapshot.getRecordCount());
+            assertEquals(2, snapshot.getDayCount());
+        }
+    }
+
+    /**
+     * Ensure that extending the query engine's running totals gives the same range sums and averages as building it again.
+     */
+    @Test
+    public void assertRangeQueryEngineAppend() throws Exception
+    {
+        try (Connection before = importToTempDatabase(APPEND_HEADER + APPEND_DAYS);
+             Connection after = importToTempDatabase(APPEND_HEADER + APPEND_DAYS + APPEND_NEW_DAY))
+        {
+            RangeQueryEngine engine = new RangeQueryEngine(CovidDataSnapshot.load(before));
+            RangeQueryEngine appended = engine.append(engine.getSnapshot().append(readRecords(APPEND_HEADER + APPEND_NEW_DAY)));
+            RangeQueryEngine loaded = new RangeQueryEngine(CovidDataSnapshot.load(after));
+            int sutton = BoroughRegistry.getId("Sutton");
+            for(LocalDate start = APPEND_FIRST; !start.isAfter(APPEND_LAST); start = start.plusDays(1))
+            {
+                for(LocalDate end = start; !end.isAfter(APPEND_LAST); end = end.plusDays(1))
+                {
+                    assertEquals(loaded.getAverage(CovidDataSnapshot.PARKS_GMR, start, end), appended.getAverage(CovidDataSnapshot.PARKS_GMR, start, end));
+                    assertEquals(loaded.getSum(CovidDataSnapshot.TRANSIT_GMR, sutton, start, end), appended.getSum(CovidDataSnapshot.TRANSIT_GMR, sutton, start, end));
+                }
+            }
+            assertEquals(3, engine.getCount(CovidDataSnapshot.PARKS_GMR, RangeQueryEngine.ALL_BOROUGHS, APPEND_FIRST, APPEND_LAST));
+        }
+    }
+
+    /**
+     * Ensure that a catalog extended with a day describes the table the same as one worked out from it.
+     */
+    @Test
+    public void assertDatasetCatalogAppend() throws Exception
+    {
+        try (Connection before = importToTempDatabase(APPEND_HEADER + APPEND_DAYS);
+             Connection after = importToTempDatabase(APPEND_HEADER + APPEND_DAYS + APPEND_NEW_DAY))
+        {
+            DatasetCatalog appended = DatasetCatalog.build(before).append(readRecords(APPEND_HEADER + APPEND_NEW_DAY));
+            DatasetCatalog loaded = DatasetCatalog.build(after);
+            assertEquals(loaded.getRecordCount(), appended.getRecordCount());
+            assertEquals(APPEND_LAST, appended.getLastDate());
+            assertEquals(loaded.getLastDate(BoroughRegistry.getId("Sutton")), appended.getLastDate(BoroughRegistry.getId("Sutton")));
+            assertEquals(loaded.getValueCount(CovidDataSnapshot.PARKS_GMR), appended.getValueCount(CovidDataSnapshot.PARKS_GMR));
+            assertEquals(loaded.getLastValueDate(CovidDataSnapshot.PARKS_GMR), appended.getLastValueDate(CovidDataSnapshot.PARKS_GMR));
+        }
+    }
+
+    /**
+     * Ensure that a day is appended to the table with missing totals worked out, and that days which
+     * don't follow on from the table are refused before anything is written.
+     */
+    @Test
+    public void assertAppendToTable() throws Exception
+    {
+        // Sutton's totals are missing on the last day, so the new days must carry on from the day before it.
+        String table = APPEND_HEADER + allBoroughs("2020-02-03", "10,10,1,1", "1,1,0,0") + allBoroughs("2020-02-04", "5,,0,", "1,2,0,0");
+        String newDay = allBoroughs("2020-02-05", "2,17,1,2", "1,3,0,0");
+        try (Connection conn = importToTempDatabase(table))
+        {
+            LocalDate previousDay = LocalDate.of(2020, 2, 4);
+            // Days already in the table, a gap, two records for a borough on one day and a total that doesn't carry on.
+            assertThrows(IllegalArgumentException.class, () -> CovidDataLoader.checkAppend(readRecords(table), previousDay, conn));
+            assertThrows(IllegalArgumentException.class, () -> CovidDataLoader.checkAppend(
+                readRecords(APPEND_HEADER + allBoroughs("2020-02-06", "2,17,1,2", "1,3,0,0")), previousDay, conn));
+            assertThrows(IllegalArgumentException.class, () -> CovidDataLoader.checkAppend(
+                readRecords(APPEND_HEADER + newDay + "2020-02-05,Sutton,,,,,,,2,17,1,2\n"), previousDay, conn));
+            assertThrows(IllegalArgumentException.class, () -> CovidDataLoader.checkAppend(
+                readRecords(APPEND_HEADER + allBoroughs("2020-02-05", "2,18,1,2", "1,3,0,0")), previousDay, conn));
+            // A day without every borough, whether it is the first or the last.
+            assertThrows(IllegalArgumentException.class, () -> CovidDataLoader.checkAppend(
+                readRecords(APPEND_HEADER + "2020-02-05,Sutton,,,,,,,2,17,1,2\n"), previousDay, conn));
+            assertThrows(IllegalArgumentException.class, () -> CovidDataLoader.checkAppend(
+                readRecords(APPEND_HEADER + newDay + "2020-02-06,Sutton,,,,,,,3,20,0,2\n"), previousDay, conn));
+            assertEquals(2 * BoroughRegistry.COUNT, CovidDataSnapshot.load(conn).getRecordCount());
+
+            CovidRecords records = readRecords(APPEND_HEADER + allBoroughs("2020-02-05", "2,,1,", "1,3,0,0") + allBoroughs("2020-02-06", "3,,0,", "1,,0,"));
+            CovidDataLoader.checkAppend(records, previousDay, conn);
+            conn.setAutoCommit(false);
+            CovidDataLoader.insertRecords(records, conn);
+            CovidDataSnapshot snapshot = CovidDataSnapshot.load(conn);
+            int sutton = BoroughRegistry.getId("Sutton");
+            assertEquals(4 * BoroughRegistry.COUNT, snapshot.getRecordCount());
+            assertEquals(20, snapshot.getValue(CovidDataSnapshot.TOTAL_CASES, sutton, LocalDate.of(2020, 2, 6)));
+            assertEquals(2, snapshot.getValue(CovidDataSnapshot.TOTAL_DEATHS, sutton, LocalDate.of(2020, 2, 6)));
+            assertEquals(4, snapshot.getValue(CovidDataSnapshot.TOTAL_CASES, BoroughRegistry.getId("Camden"), LocalDate.of(2020, 2, 6)));
+        }
+    }
+
+    /**
+     * Ensure that only the cached results for date ranges reaching a date are invalidated.
+     */
+    @Test
+    public void assertResultCacheInvalidation()
+    {
+        ResultCache.clear();
+        try
+        {
+            ResultCache.get("test", APPEND_FIRST, LocalDate.of(2020, 2, 4), null, () -> 1);
+            ResultCache.get("test", APPEND_FIRST, APPEND_LAST, null, () -> 2);
+            assertEquals(1, ResultCache.invalidateFrom(APPEND_LAST));
+            assertTrue(ResultCache.contains("test", APPEND_FIRST, LocalDate.of(2020, 2, 4), null));
+            assertFalse(ResultCache.contains("test", APPEND_FIRST, APPEND_LAST, null));
+        }
+        finally
+        {
+            ResultCache.clear();
+        }
+    }
+
+    /**
+     * Creates a temporary file, which is deleted when the tests finish.
+     */
+    private static File createTempFile(String prefix, String suffix) throws IOException
+    {
+        File file = File.createTempFile(prefix, suffix);
+        file.deleteOnExit();
+        return file;
+    }
+
+    /**
+     * Writes a temporary CSV file.
+     */
+    private static File writeCsv(String contents) throws IOException
+    {
+        File csv = createTempFile("covid_london", ".csv");
+        Files.writeString(csv.toPath(), contents);
+        return csv;
+    }
+
+    /**
+     * Opens a connection to a new, empty, temporary database.
+     */
+    private static Connection openTempDatabase() throws IOException, SQLException
+    {
+        File database = createTempFile("CovidData", ".db");
+        new File(database.getPath() + "-wal").deleteOnExit();
+        new File(database.getPath() + "-shm").deleteOnExit();
+        return DriverManager.getConnection("jdbc:sqlite:" + database.getPath());
+    }
+
+    /**
+     * Opens a temporary database with the CSV imported into its CovidData table.
+     */
+    private static Connection importToTempDatabase(String csv) throws IOException, SQLException
+    {
+        Connection conn = openTempDatabase();
+        CovidDataImporter.importCsv(writeCsv(csv).getPath(), conn);
+        return conn;
+    }
+
+    /**
+     * Reads CSV contents into records, as a daily file is read before it is appended.
+     */
+    /**
+     * A day of CSV records for every borough, without GMR values.
+     * @param sutton Sutton's new cases, total cases, new deaths and total deaths.
+     * @param others those of every other borough.
+     */
+    private static String allBoroughs(String date, String sutton, String others)
+    {
+        StringBuilder csv = new StringBuilder();
+        for(int borough = 0; borough < BoroughRegistry.COUNT; borough++)
+        {
+            String name = BoroughRegistry.getName(borough);
+            csv.append(date).append(',').append(name).append(",,,,,,,").append(name.equals("Sutton") ? sutton : others).append('\n');
+        }
+        return csv.toString();
+    }
+
+    private static CovidRecords readRecords(String csv) throws IOException
+    {
+        return CovidDataImporter.readCsv(writeCsv(csv).getPath());
+    }
 }
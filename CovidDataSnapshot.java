@@ -0,0 +1,505 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An in-memory, column oriented copy of the CovidData table.
+ * Every column is stored as a primitive int array indexed by borough and day,
+ * with a bitmap marking the cells that are NULL in the database. The query
+ * methods mirror those in CovidDataLoader and return exactly the same results.
+ *
+ * @author Muhammed Keeka
+ * @version 2024-03-25
+ */
+public class CovidDataSnapshot
+{
+    // Column indexes, in the order the columns appear in the CovidData table.
+    public static final int RETAIL_RECREATIONAL_GMR = 0;
+    public static final int GROCERY_PHARMACY_GMR = 1;
+    public static final int PARKS_GMR = 2;
+    public static final int TRANSIT_GMR = 3;
+    public static final int WORKPLACES_GMR = 4;
+    public static final int RESIDENTIAL_GMR = 5;
+    public static final int NEW_CASES = 6;
+    public static final int TOTAL_CASES = 7;
+    public static final int NEW_DEATHS = 8;
+    public static final int TOTAL_DEATHS = 9;
+    public static final int COLUMN_COUNT = 10;
+    public static final String[] COLUMN_NAMES = {"RetailRecreationalGMR", "GroceryPharmacyGMR", "ParksGMR", "TransitGMR", "WorkplacesGMR", "ResidentialGMR", "NewCases", "TotalCases", "NewDeaths", "TotalDeaths"};
+
+    // Boroughs are indexed by their BoroughRegistry id.
+    private final int boroughCount = BoroughRegistry.COUNT;
+    // The epoch day of the first date in the table, and how many days it spans.
+    private final long firstDay;
+    private final int dayCount;
+    // Cell (borough, day) lives at index borough * dayCount + day of each array.
+    private final int[][] columns;
+    private final long[][] nulls;
+    private final long[] present;
+    private int recordCount;
+
+    private CovidDataSnapshot(long firstDay, int dayCount)
+    {
+        this.firstDay = firstDay;
+        this.dayCount = dayCount;
+        int cells = boroughCount * dayCount;
+        columns = new int[COLUMN_COUNT][cells];
+        nulls = new long[COLUMN_COUNT][(cells + 63) / 64];
+        present = new long[(cells + 63) / 64];
+    }
+
+    /**
+     * Reads the whole CovidData table into a new snapshot.
+     * @param conn an open connection to the database.
+     * @return the snapshot.
+     */
+    public static CovidDataSnapshot load(Connection conn) throws SQLException
+    {
+        Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery("SELECT MIN(`Date`), MAX(`Date`) FROM CovidData;");
+        rs.next();
+        String min = rs.getString(1);
+        String max = rs.getString(2);
+        rs.close();
+
+        long first = min == null ? 0 : LocalDate.parse(min).toEpochDay();
+        int days = max == null ? 0 : (int) (LocalDate.parse(max).toEpochDay() - first + 1);
+        CovidDataSnapshot snapshot = new CovidDataSnapshot(first, days);
+
+        rs = stmt.executeQuery("SELECT * FROM CovidData;");
+        while(rs.next())
+        {
+            int borough = BoroughRegistry.getId(rs.getString("Borough"));
+            if(borough == -1)
+            {
+                System.err.println("Skipping record for unknown borough: " + rs.getString("Borough"));
+                continue;
+            }
+            int day = (int) (LocalDate.parse(rs.getString("Date")).toEpochDay() - first);
+            int cell = borough * days + day;
+            snapshot.present[cell >> 6] |= 1L << cell;
+            for(int c = 0; c < COLUMN_COUNT; c++)
+            {
+                int value = rs.getInt(COLUMN_NAMES[c]);
+                if(rs.wasNull())
+                    snapshot.nulls[c][cell >> 6] |= 1L << cell;
+                else
+                    snapshot.columns[c][cell] = value;
+            }
+            snapshot.recordCount++;
+        }
+        rs.close();
+        stmt.close();
+        return snapshot;
+    }
+
+    /**
+     * Returns a copy of the snapshot with records for later days added. This snapshot isn't changed,
+     * so anything still reading it carries on undisturbed. The cells are laid out by borough and then
+     * day, so every borough's days are copied across to make room for the new ones.
+     * @param records records for days after the last day of the snapshot, at most one per borough and day.
+     * @return the new snapshot.
+     */
+    public CovidDataSnapshot append(CovidRecords records)
+    {
+        if(records.size() == 0)
+            return this;
+        long first = dayCount == 0 ? Long.MAX_VALUE : firstDay;
+        long last = firstDay + dayCount - 1;
+        for(int row = 0; row < records.size(); row++)
+        {
+            long day = records.getEpochDay(row);
+            if(dayCount > 0 && day <= last)
+                throw new IllegalArgumentException("Only days after " + LocalDate.ofEpochDay(last) + " can be appended: " + LocalDate.ofEpochDay(day));
+            first = Math.min(first, day);
+        }
+        for(int row = 0; row < records.size(); row++)
+            last = Math.max(last, records.getEpochDay(row));
+
+        int days = (int) (last - first + 1);
+        CovidDataSnapshot appended = new CovidDataSnapshot(first, days);
+        for(int b = 0; b < boroughCount; b++)
+        {
+            for(int c = 0; c < COLUMN_COUNT; c++)
+                System.arraycopy(columns[c], b * dayCount, appended.columns[c], b * days, dayCount);
+            for(int day = 0; day < dayCount; day++)
+            {
+                int from = b * dayCount + day;
+                int to = b * days + day;
+                if((present[from >> 6] & (1L << from)) != 0)
+                    appended.present[to >> 6] |= 1L << to;
+                for(int c = 0; c < COLUMN_COUNT; c++)
+                {
+                    if((nulls[c][from >> 6] & (1L << from)) != 0)
+                        appended.nulls[c][to >> 6] |= 1L << to;
+                }
+            }
+        }
+        for(int row = 0; row < records.size(); row++)
+        {
+            int cell = records.getBoroughId(row) * days + (int) (records.getEpochDay(row) - first);
+            appended.present[cell >> 6] |= 1L << cell;
+            for(int c = 0; c < COLUMN_COUNT; c++)
+            {
+                if(records.isNull(row, c))
+                    appended.nulls[c][cell >> 6] |= 1L << cell;
+                else
+                    appended.columns[c][cell] = records.getInt(row, c);
+            }
+        }
+        appended.recordCount = recordCount + records.size();
+        return appended;
+    }
+
+    /**
+     * @return the number of boroughs in the snapshot. Borough indexes are BoroughRegistry ids.
+     */
+    public int getBoroughCount()
+    {
+        return boroughCount;
+    }
+
+    /**
+     * @return the epoch day of the first date in the snapshot.
+     */
+    public long getFirstDay()
+    {
+        return firstDay;
+    }
+
+    /**
+     * @return the number of days between the first and last date, inclusive.
+     */
+    public int getDayCount()
+    {
+        return dayCount;
+    }
+
+    /**
+     * @return whether a record exists for the borough on the given day index.
+     */
+    public boolean hasRecord(int borough, int day)
+    {
+        int cell = borough * dayCount + day;
+        return (present[cell >> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * @return whether the column holds a value for the borough on the given day index.
+     */
+    public boolean hasValue(int column, int borough, int day)
+    {
+        int cell = borough * dayCount + day;
+        return (present[cell >> 6] & (1L << cell)) != 0 && (nulls[column][cell >> 6] & (1L << cell)) == 0;
+    }
+
+    /**
+     * @return the raw value of the column for the borough on the given day index.
+     * Only meaningful when hasValue() is true.
+     */
+    public int getValue(int column, int borough, int day)
+    {
+        return columns[column][borough * dayCount + day];
+    }
+
+    /**
+     * @return the day index of the date, or -1 if it is outside the snapshot.
+     */
+    public int getDayIndex(LocalDate date)
+    {
+        long day = date.toEpochDay() - firstDay;
+        if(day < 0 || day >= dayCount)
+            return -1;
+        return (int) day;
+    }
+
+    public Integer getRecordCount()
+    {
+        return recordCount;
+    }
+
+    /**
+     * Equivalent to SELECT column FROM CovidData WHERE Borough = borough AND Date = date.
+     */
+    public Integer getValue(int column, int borough, LocalDate date)
+    {
+        int day = getDayIndex(date);
+        if(!BoroughRegistry.isValid(borough) || day == -1 || !hasValue(column, borough, day))
+            return null;
+        return getValue(column, borough, day);
+    }
+
+    /**
+     * Equivalent to SELECT SUM(column) FROM CovidData WHERE Date = date.
+     */
+    public Integer getSum(int column, LocalDate date)
+    {
+        int day = getDayIndex(date);
+        if(day == -1)
+            return null;
+        return sumOfDay(column, day);
+    }
+
+    private Integer sumOfDay(int column, int day)
+    {
+        int sum = 0;
+        boolean found = false;
+        for(int b = 0; b < boroughCount; b++)
+        {
+            if(hasValue(column, b, day))
+            {
+                sum += getValue(column, b, day);
+                found = true;
+            }
+        }
+        return found ? sum : null;
+    }
+
+    /**
+     * The change in a cumulative column across all boroughs between the day before start and end.
+     */
+    public Integer getDelta(int column, LocalDate start, LocalDate end)
+    {
+        Integer endTotal = getSum(column, end);
+        Integer startTotal = getSum(column, start.minusDays(1));
+        if(endTotal != null && startTotal != null)
+            return endTotal - startTotal;
+        else
+            return null;
+    }
+
+    /**
+     * The change in a cumulative column for one borough between the day before start and end.
+     */
+    public Integer getDelta(int column, LocalDate start, LocalDate end, int borough)
+    {
+        Integer endTotal = getValue(column, borough, end);
+        Integer startTotal = getValue(column, borough, start.minusDays(1));
+        if(endTotal != null && startTotal != null)
+            return endTotal - startTotal;
+        else
+            return null;
+    }
+
+    /**
+     * The largest change in a cumulative column of any single borough between the day before start and end.
+     */
+    public Integer getMaxDelta(int column, LocalDate start, LocalDate end)
+    {
+        int from = getDayIndex(start.minusDays(1));
+        int to = getDayIndex(end);
+        if(from == -1 || to == -1)
+            return null;
+        Integer max = null;
+        for(int b = 0; b < boroughCount; b++)
+        {
+            if(hasValue(column, b, from) && hasValue(column, b, to))
+            {
+                int delta = getValue(column, b, to) - getValue(column, b, from);
+                if(max == null || delta > max)
+                    max = delta;
+            }
+        }
+        return max;
+    }
+
+    /**
+     * The change in cases and deaths of every borough between the day before start and end.
+     * @return {cases, deaths} for each borough, indexed by id. A delta is null if its total is missing
+     * at either end, and a borough is null if both are.
+     */
+    public Integer[][] getBoroughDeltas(LocalDate start, LocalDate end)
+    {
+        Integer[][] data = new Integer[boroughCount][];
+        for(int b = 0; b < boroughCount; b++)
+        {
+            Integer cases = getDelta(TOTAL_CASES, start, end, b);
+            Integer deaths = getDelta(TOTAL_DEATHS, start, end, b);
+            if(cases != null || deaths != null)
+                data[b] = new Integer[] {cases, deaths};
+        }
+        return data;
+    }
+
+    /**
+     * Equivalent to SELECT AVG(column) FROM CovidData WHERE Date BETWEEN start AND end,
+     * truncated to an Integer as the JDBC driver does.
+     */
+    public Integer getAverage(int column, LocalDate start, LocalDate end)
+    {
+        long sum = 0;
+        int count = 0;
+        int from = (int) Math.max(0, start.toEpochDay() - firstDay);
+        int to = (int) Math.min(dayCount - 1, end.toEpochDay() - firstDay);
+        for(int b = 0; b < boroughCount; b++)
+        {
+            for(int day = from; day <= to; day++)
+            {
+                if(hasValue(column, b, day))
+                {
+                    sum += getValue(column, b, day);
+                    count++;
+                }
+            }
+        }
+        if(count == 0)
+            return null;
+        return (int) ((double) sum / count);
+    }
+
+    public LocalDate getEarliestDate()
+    {
+        if(dayCount == 0)
+            return null;
+        return LocalDate.ofEpochDay(firstDay);
+    }
+
+    public LocalDate getLatestDate()
+    {
+        if(dayCount == 0)
+            return null;
+        return LocalDate.ofEpochDay(firstDay + dayCount - 1);
+    }
+
+    /**
+     * Equivalent to SELECT Date, SUM(column) FROM CovidData WHERE Date BETWEEN start AND end GROUP BY Date.
+     */
+    public Map<LocalDate, Integer> getSumPerDay(int column, LocalDate start, LocalDate end)
+    {
+        Map<LocalDate, Integer> data = new HashMap<>();
+        int from = (int) Math.max(0, start.toEpochDay() - firstDay);
+        int to = (int) Math.min(dayCount - 1, end.toEpochDay() - firstDay);
+        for(int day = from; day <= to; day++)
+        {
+            boolean recorded = false;
+            for(int b = 0; b < boroughCount && !recorded; b++)
+                recorded = hasRecord(b, day);
+            if(recorded)
+                data.put(LocalDate.ofEpochDay(firstDay + day), sumOfDay(column, day));
+        }
+        return data;
+    }
+
+    /**
+     * Passes each day's sum to the consumer, in date order, like iterating over
+     * SELECT Date, SUM(column) FROM CovidData WHERE Date BETWEEN start AND end GROUP BY Date ORDER BY Date.
+     * Days whose sum is NULL are skipped.
+     */
+    public void forEachSumPerDay(int column, LocalDate start, LocalDate end, DailySeries.DayConsumer consumer)
+    {
+        int from = (int) Math.max(0, start.toEpochDay() - firstDay);
+        int to = (int) Math.min(dayCount - 1, end.toEpochDay() - firstDay);
+        for(int day = from; day <= to; day++)
+        {
+            int sum = 0;
+            boolean found = false;
+            for(int b = 0; b < boroughCount; b++)
+            {
+                if(hasValue(column, b, day))
+                {
+                    sum += getValue(column, b, day);
+                    found = true;
+                }
+            }
+            if(found)
+                consumer.accept(firstDay + day, sum);
+        }
+    }
+
+    /**
+     * Answers every series in the request from one pass over the days in the range.
+     */
+    public DailySeries[] getSeries(SeriesRequest request)
+    {
+        SeriesRequest.Accumulator series = request.newAccumulator();
+        boolean[] used = new boolean[COLUMN_COUNT];
+        for(int column = 0; column < COLUMN_COUNT; column++)
+            used[column] = request.usesColumn(column);
+        boolean london = request.usesBorough(SeriesRequest.ALL_BOROUGHS);
+        int from = (int) Math.max(0, request.getStart().toEpochDay() - firstDay);
+        int to = (int) Math.min(dayCount - 1, request.getEnd().toEpochDay() - firstDay);
+        for(int day = from; day <= to; day++)
+        {
+            for(int b = 0; b < boroughCount; b++)
+            {
+                for(int column = 0; column < COLUMN_COUNT; column++)
+                {
+                    if(used[column] && hasValue(column, b, day))
+                    {
+                        series.add(firstDay + day, b, column, getValue(column, b, day), 1);
+                        if(london)
+                            series.add(firstDay + day, SeriesRequest.ALL_BOROUGHS, column, getValue(column, b, day), 1);
+                    }
+                }
+            }
+        }
+        return series.finish();
+    }
+
+    /**
+     * Equivalent to SELECT * FROM CovidData WHERE Borough = borough AND Date BETWEEN start AND end ORDER BY order.
+     * As in SQLite, NULLs are ordered first; ties keep date order.
+     */
+    public List<CovidData> getBoroughData(LocalDate start, LocalDate end, int borough, String order)
+    {
+        return getBoroughRecords(start, end, borough, order).toList();
+    }
+
+    /**
+     * The same as getBoroughData, but in the compact form.
+     */
+    public CovidRecords getBoroughRecords(LocalDate start, LocalDate end, int borough, String order)
+    {
+        int from = (int) Math.max(0, start.toEpochDay() - firstDay);
+        int to = (int) Math.min(dayCount - 1, end.toEpochDay() - firstDay);
+        CovidRecords data = new CovidRecords(to - from + 1);
+        if(!CovidDataLoader.ORDER_COLUMNS.contains(order))
+        {
+            System.err.println("Cannot order by unknown column: " + order);
+            return data;
+        }
+        int orderColumn = Arrays.asList(COLUMN_NAMES).indexOf(order);
+        if(!BoroughRegistry.isValid(borough))
+            return data;
+        int[] days = new int[Math.max(0, to - from + 1)];
+        int count = 0;
+        for(int day = from; day <= to; day++)
+        {
+            if(hasRecord(borough, day))
+                days[count++] = day;
+        }
+        if(orderColumn != -1)
+        {
+            Integer[] sorted = new Integer[count];
+            for(int i = 0; i < count; i++)
+                sorted[i] = days[i];
+            // Arrays.sort is stable for objects, so equal values stay in date order.
+            Arrays.sort(sorted, (x, y) -> {
+                boolean xNull = !hasValue(orderColumn, borough, x);
+                boolean yNull = !hasValue(orderColumn, borough, y);
+                if(xNull || yNull)
+                    return Boolean.compare(!xNull, !yNull);
+                return Integer.compare(getValue(orderColumn, borough, x), getValue(orderColumn, borough, y));
+            });
+            for(int i = 0; i < count; i++)
+                days[i] = sorted[i];
+        }
+        for(int i = 0; i < count; i++)
+        {
+            int day = days[i];
+            int row = data.addRow(firstDay + day, borough);
+            for(int c = 0; c < COLUMN_COUNT; c++)
+            {
+                if(hasValue(c, borough, day))
+                    data.set(row, c, getValue(c, borough, day));
+            }
+        }
+        return data;
+    }
+}
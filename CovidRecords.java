@@ -0,0 +1,239 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A compact list of CovidData records.
+ * Each row is stored as an epoch day, a borough id, the ten data columns packed
+ * into one int array and a bitmask of the columns that are null, so a row takes about
+ * 48 bytes instead of the dozen objects a CovidData with boxed fields needs.
+ * Rows can be read through a Cursor without allocating anything, or as CovidData
+ * objects, which are views of a row.
+ * Column numbers are the same as CovidDataSnapshot's.
+ *
+ * @author Muhammed Keeka
+ * @version 2024-03-25
+ */
+public class CovidRecords
+{
+    public static final int COLUMN_COUNT = CovidDataSnapshot.COLUMN_COUNT;
+    private static final short ALL_NULL = (short) ((1 << COLUMN_COUNT) - 1);
+
+    private int size;
+    private int[] days;
+    private short[] boroughs;
+    // Column c of row r lives at index r * COLUMN_COUNT + c.
+    private int[] values;
+    private short[] nullMasks;
+
+    /**
+     * @param capacity the number of rows expected. More can be added.
+     */
+    public CovidRecords(int capacity)
+    {
+        capacity = Math.max(capacity, 1);
+        days = new int[capacity];
+        boroughs = new short[capacity];
+        values = new int[capacity * COLUMN_COUNT];
+        nullMasks = new short[capacity];
+    }
+
+    /**
+     * Adds a row in which every column is null.
+     * @return the number of the new row.
+     */
+    public int addRow(LocalDate date, String borough)
+    {
+        int id = BoroughRegistry.getId(borough);
+        if(id == -1)
+            throw new IllegalArgumentException("Unknown borough: " + borough);
+        return addRow(date.toEpochDay(), id);
+    }
+
+    /**
+     * Adds a row in which every column is null.
+     * @param borough the borough's BoroughRegistry id.
+     * @return the number of the new row.
+     */
+    public int addRow(long epochDay, int borough)
+    {
+        if(size == days.length)
+        {
+            int capacity = size * 2;
+            days = Arrays.copyOf(days, capacity);
+            boroughs = Arrays.copyOf(boroughs, capacity);
+            values = Arrays.copyOf(values, capacity * COLUMN_COUNT);
+            nullMasks = Arrays.copyOf(nullMasks, capacity);
+        }
+        days[size] = (int) epochDay;
+        boroughs[size] = (short) borough;
+        nullMasks[size] = ALL_NULL;
+        return size++;
+    }
+
+    /**
+     * Sets a column of a row to a value.
+     */
+    public void set(int row, int column, int value)
+    {
+        values[row * COLUMN_COUNT + column] = value;
+        nullMasks[row] &= ~(1 << column);
+    }
+
+    /**
+     * Sets a column of a row to a value, or to null.
+     */
+    public void set(int row, int column, Integer value)
+    {
+        if(value != null)
+            set(row, column, value.intValue());
+        else
+            nullMasks[row] |= 1 << column;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public int getEpochDay(int row)
+    {
+        return days[row];
+    }
+
+    public LocalDate getDate(int row)
+    {
+        return LocalDate.ofEpochDay(days[row]);
+    }
+
+    /**
+     * @return the BoroughRegistry id of the row's borough.
+     */
+    public int getBoroughId(int row)
+    {
+        return boroughs[row];
+    }
+
+    public String getBorough(int row)
+    {
+        return BoroughRegistry.getName(boroughs[row]);
+    }
+
+    /**
+     * @return whether the column is null in the row.
+     */
+    public boolean isNull(int row, int column)
+    {
+        return (nullMasks[row] & (1 << column)) != 0;
+    }
+
+    /**
+     * @return the column's value in the row. Only meaningful if it isn't null.
+     */
+    public int getInt(int row, int column)
+    {
+        return values[row * COLUMN_COUNT + column];
+    }
+
+    /**
+     * @return the column's value in the row, or null.
+     */
+    public Integer getValue(int row, int column)
+    {
+        return isNull(row, column) ? null : getInt(row, column);
+    }
+
+    /**
+     * @return a CovidData view of the row.
+     */
+    public CovidData get(int row)
+    {
+        return new CovidData(this, row);
+    }
+
+    /**
+     * @return a CovidData view of every row, in order.
+     */
+    public List<CovidData> toList()
+    {
+        List<CovidData> list = new ArrayList<>(size);
+        for(int row = 0; row < size; row++)
+        {
+            list.add(get(row));
+        }
+        return list;
+    }
+
+    /**
+     * @return a new cursor, positioned before the first row.
+     */
+    public Cursor cursor()
+    {
+        return new Cursor();
+    }
+
+    /**
+     * Reads the rows one at a time without creating an object per row.
+     * <pre>
+     * CovidRecords.Cursor c = records.cursor();
+     * while(c.next())
+     *     if(!c.isNull(CovidDataSnapshot.NEW_CASES))
+     *         total += c.getInt(CovidDataSnapshot.NEW_CASES);
+     * </pre>
+     */
+    public class Cursor
+    {
+        private int row = -1;
+
+        /**
+         * Moves to the next row.
+         * @return false if there are no more rows.
+         */
+        public boolean next()
+        {
+            if(row + 1 >= size)
+                return false;
+            row++;
+            return true;
+        }
+
+        /**
+         * Moves back to before the first row.
+         */
+        public void reset()
+        {
+            row = -1;
+        }
+
+        public int getRow()
+        {
+            return row;
+        }
+
+        public int getEpochDay()
+        {
+            return days[row];
+        }
+
+        public int getBoroughId()
+        {
+            return boroughs[row];
+        }
+
+        public String getBorough()
+        {
+            return BoroughRegistry.getName(boroughs[row]);
+        }
+
+        public boolean isNull(int column)
+        {
+            return (nullMasks[row] & (1 << column)) != 0;
+        }
+
+        public int getInt(int column)
+        {
+            return values[row * COLUMN_COUNT + column];
+        }
+    }
+}
@@ -0,0 +1,293 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads a CSV file a line at a time without creating a String per line or per field.
+ * Lines are read into a reusable byte buffer and each field is only recorded as where it starts
+ * and ends in the buffer, so numbers and dates are parsed straight from the bytes. Fields may be
+ * surrounded by double quotes, but quoted fields may not contain commas, quotes or line breaks,
+ * which the London COVID data never does.
+ *
+ * @author Muhammed Keeka
+ * @version 2024-03-25
+ */
+public class CsvScanner implements Closeable
+{
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final InputStream in;
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    // The bytes read but not yet scanned are buffer[position] to buffer[limit - 1].
+    private int position = 0;
+    private int limit = 0;
+    private boolean endOfInput = false;
+    // Field i of the current line is buffer[starts[i]] to buffer[ends[i] - 1].
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private int fieldCount = 0;
+    private long lineNumber = 0;
+
+    public CsvScanner(InputStream in)
+    {
+        this.in = in;
+    }
+
+    /**
+     * Moves on to the next line that isn't blank.
+     * @return false if there are no more lines.
+     */
+    public boolean nextLine() throws IOException
+    {
+        while(true)
+        {
+            int end = findLineEnd();
+            if(end == -1)
+                return false;
+            lineNumber++;
+            int lineEnd = end > position && buffer[end - 1] == '\r' ? end - 1 : end;
+            boolean blank = lineEnd == position;
+            if(!blank)
+                split(position, lineEnd);
+            position = end + 1;
+            if(!blank)
+                return true;
+        }
+    }
+
+    /**
+     * Finds the end of the current line, reading more of the input if necessary.
+     * The last line doesn't need a line break after it.
+     * @return the index of the line break, or of the end of the last line, or -1 at the end of the input.
+     */
+    private int findLineEnd() throws IOException
+    {
+        int scanned = position;
+        while(true)
+        {
+            for(int i = scanned; i < limit; i++)
+            {
+                if(buffer[i] == '\n')
+                    return i;
+            }
+            scanned = limit;
+            if(endOfInput)
+            {
+                if(position == limit)
+                    return -1;
+                // Pretend the last line ends in a line break, which takes the place of the byte after it.
+                if(limit == buffer.length)
+                    compact(true);
+                buffer[limit] = '\n';
+                return limit++;
+            }
+            scanned -= position;
+            compact(limit - position == buffer.length);
+            int read = in.read(buffer, limit, buffer.length - limit);
+            if(read == -1)
+                endOfInput = true;
+            else
+                limit += read;
+            scanned += position;
+        }
+    }
+
+    /**
+     * Moves the unscanned bytes to the start of the buffer, making the buffer bigger if asked to,
+     * for a line longer than the buffer.
+     */
+    private void compact(boolean grow)
+    {
+        byte[] target = grow ? new byte[buffer.length * 2] : buffer;
+        System.arraycopy(buffer, position, target, 0, limit - position);
+        buffer = target;
+        limit -= position;
+        position = 0;
+    }
+
+    private void split(int start, int end)
+    {
+        fieldCount = 0;
+        int fieldStart = start;
+        for(int i = start; i <= end; i++)
+        {
+            if(i == end || buffer[i] == ',')
+            {
+                if(fieldCount == starts.length)
+                {
+                    starts = Arrays.copyOf(starts, fieldCount * 2);
+                    ends = Arrays.copyOf(ends, fieldCount * 2);
+                }
+                int fieldEnd = i;
+                if(fieldEnd - fieldStart >= 2 && buffer[fieldStart] == '"' && buffer[fieldEnd - 1] == '"')
+                {
+                    fieldStart++;
+                    fieldEnd--;
+                }
+                starts[fieldCount] = fieldStart;
+                ends[fieldCount] = fieldEnd;
+                fieldCount++;
+                fieldStart = i + 1;
+            }
+        }
+    }
+
+    /**
+     * @return the number of the current line, counting from 1.
+     */
+    public long getLineNumber()
+    {
+        return lineNumber;
+    }
+
+    /**
+     * @return the number of fields on the current line.
+     */
+    public int getFieldCount()
+    {
+        return fieldCount;
+    }
+
+    /**
+     * @return whether the field is empty, or missing from the end of the line.
+     */
+    public boolean isEmpty(int field)
+    {
+        return field >= fieldCount || starts[field] == ends[field];
+    }
+
+    /**
+     * Creates a String of the field, so it is best kept for the header line.
+     */
+    public String getString(int field)
+    {
+        if(field >= fieldCount)
+            return "";
+        return new String(buffer, starts[field], ends[field] - starts[field], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return whether the field, ignoring case, is the ASCII text.
+     */
+    public boolean fieldEquals(int field, byte[] text)
+    {
+        if(field >= fieldCount || ends[field] - starts[field] != text.length)
+            return false;
+        for(int i = 0; i < text.length; i++)
+        {
+            if(toLowerCase(buffer[starts[field] + i]) != toLowerCase(text[i]))
+                return false;
+        }
+        return true;
+    }
+
+    private static int toLowerCase(byte b)
+    {
+        return b >= 'A' && b <= 'Z' ? b + ('a' - 'A') : b;
+    }
+
+    /**
+     * Parses a whole number, which may have a sign and, as some of the data does, a fraction of zero, e.g. "12.0".
+     * @throws NumberFormatException if the field is empty or isn't a whole number.
+     */
+    public int getInt(int field)
+    {
+        int i = field < fieldCount ? starts[field] : 0;
+        int end = field < fieldCount ? ends[field] : 0;
+        boolean negative = i < end && buffer[i] == '-';
+        if(i < end && (buffer[i] == '-' || buffer[i] == '+'))
+            i++;
+        if(i == end || buffer[i] == '.')
+            throw invalid(field, "a whole number");
+        long value = 0;
+        for(; i < end && buffer[i] != '.'; i++)
+        {
+            int digit = buffer[i] - '0';
+            if(digit < 0 || digit > 9 || value > Integer.MAX_VALUE)
+                throw invalid(field, "a whole number");
+            value = value * 10 + digit;
+        }
+        // Anything after a decimal point must be zeros.
+        for(i = i < end ? i + 1 : i; i < end; i++)
+        {
+            if(buffer[i] != '0')
+                throw invalid(field, "a whole number");
+        }
+        value = negative ? -value : value;
+        if(value > Integer.MAX_VALUE || value < Integer.MIN_VALUE)
+            throw invalid(field, "a whole number");
+        return (int) value;
+    }
+
+    /**
+     * Parses a date in the form yyyy-MM-dd.
+     * @return the date, in days since 1970-01-01.
+     * @throws NumberFormatException if the field isn't a valid date in that form.
+     */
+    public long getEpochDay(int field)
+    {
+        if(field >= fieldCount || ends[field] - starts[field] != 10)
+            throw invalid(field, "a date (yyyy-MM-dd)");
+        int s = starts[field];
+        if(buffer[s + 4] != '-' || buffer[s + 7] != '-')
+            throw invalid(field, "a date (yyyy-MM-dd)");
+        int year = digits(field, s, 4);
+        int month = digits(field, s + 5, 2);
+        int day = digits(field, s + 8, 2);
+        if(month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month))
+            throw invalid(field, "a date (yyyy-MM-dd)");
+        return epochDay(year, month, day);
+    }
+
+    private int digits(int field, int start, int count)
+    {
+        int value = 0;
+        for(int i = start; i < start + count; i++)
+        {
+            int digit = buffer[i] - '0';
+            if(digit < 0 || digit > 9)
+                throw invalid(field, "a date (yyyy-MM-dd)");
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static int lengthOfMonth(int year, int month)
+    {
+        if(month == 2)
+            return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0 ? 29 : 28;
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    /**
+     * The same calculation as LocalDate.toEpochDay, without creating a LocalDate.
+     */
+    private static long epochDay(int year, int month, int day)
+    {
+        long y = year;
+        long total = 365 * y + (y + 3) / 4 - (y + 99) / 100 + (y + 399) / 400;
+        total += (367 * month - 362) / 12;
+        total += day - 1;
+        if(month > 2)
+        {
+            total--;
+            if(!((year % 4 == 0 && year % 100 != 0) || year % 400 == 0))
+                total--;
+        }
+        // The number of days from 0000-01-01 to 1970-01-01.
+        return total - 719528;
+    }
+
+    private NumberFormatException invalid(int field, String expected)
+    {
+        return new NumberFormatException("Line " + lineNumber + ", field " + (field + 1) + ": expected " + expected + " but found \"" + getString(field) + "\"");
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        in.close();
+    }
+}
@@ -0,0 +1,168 @@
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A value per day, in date order, for every day from the first to the last one with a value.
+ * The values are kept in an int array indexed by the number of days since the first,
+ * and a bit set marks the days without a value, so a series needs no objects per day.
+ *
+ * @author Muhammed Keeka
+ * @version 2024-03-25
+ */
+public class DailySeries
+{
+    private final long startDay;
+    private final int[] values;
+    private final BitSet nulls;
+    private final int size;
+
+    /**
+     * Receives the days of a series one at a time, in date order.
+     */
+    @FunctionalInterface
+    public interface DayConsumer
+    {
+        /**
+         * @param epochDay the day, in days since 1970-01-01.
+         * @param value the value on that day.
+         */
+        void accept(long epochDay, int value);
+    }
+
+    private DailySeries(long startDay, int[] values, BitSet nulls, int size)
+    {
+        this.startDay = startDay;
+        this.values = values;
+        this.nulls = nulls;
+        this.size = size;
+    }
+
+    /**
+     * @return the number of days, including those without a value.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @return the first day, in days since 1970-01-01. Meaningless if the series is empty.
+     */
+    public long getStartDay()
+    {
+        return startDay;
+    }
+
+    public long getEpochDay(int index)
+    {
+        return startDay + index;
+    }
+
+    public LocalDate getDate(int index)
+    {
+        return LocalDate.ofEpochDay(startDay + index);
+    }
+
+    /**
+     * @return whether the day has no value, because it had no records or they were all NULL.
+     */
+    public boolean isNull(int index)
+    {
+        return nulls.get(index);
+    }
+
+    /**
+     * @return the value on the day, or 0 if it has none.
+     */
+    public int getInt(int index)
+    {
+        return values[index];
+    }
+
+    /**
+     * @return the number of days with a value.
+     */
+    public int getValueCount()
+    {
+        return size - nulls.cardinality();
+    }
+
+    /**
+     * Passes every day with a value to the consumer, in date order.
+     */
+    public void forEach(DayConsumer consumer)
+    {
+        for(int i = 0; i < size; i++)
+        {
+            if(!nulls.get(i))
+                consumer.accept(startDay + i, values[i]);
+        }
+    }
+
+    /**
+     * Works out the average of the values over the window of days ending on each day,
+     * keeping a running sum so that each day costs the same however long the window is.
+     * Days without a value are left out of the average, and a day with none in its window has none.
+     * Averages are rounded to the nearest whole number.
+     * @param days the length of the window.
+     */
+    public DailySeries rollingAverage(int days)
+    {
+        Builder averages = new Builder();
+        long sum = 0;
+        int count = 0;
+        for(int i = 0; i < size; i++)
+        {
+            if(!nulls.get(i))
+            {
+                sum += values[i];
+                count++;
+            }
+            int leaving = i - days;
+            if(leaving >= 0 && !nulls.get(leaving))
+            {
+                sum -= values[leaving];
+                count--;
+            }
+            if(count > 0)
+                averages.accept(startDay + i, (int) Math.round((double) sum / count));
+        }
+        return averages.build();
+    }
+
+    /**
+     * Collects days passed in date order into a series. Days skipped in between have no value.
+     */
+    public static class Builder implements DayConsumer
+    {
+        private long startDay;
+        private int[] values = new int[64];
+        private final BitSet nulls = new BitSet();
+        private int size = 0;
+
+        /**
+         * Adds a day with a value. Days must be added in increasing order.
+         */
+        @Override
+        public void accept(long epochDay, int value)
+        {
+            if(size == 0)
+                startDay = epochDay;
+            long index = epochDay - startDay;
+            if(index < size)
+                throw new IllegalArgumentException("Days must be added in increasing order: " + LocalDate.ofEpochDay(epochDay));
+            if(index >= values.length)
+                values = Arrays.copyOf(values, (int) Math.max(index + 1, values.length * 2L));
+            // The days in between have no value.
+            nulls.set(size, (int) index);
+            values[(int) index] = value;
+            size = (int) index + 1;
+        }
+
+        public DailySeries build()
+        {
+            return new DailySeries(startDay, Arrays.copyOf(values, size), (BitSet) nulls.clone(), size);
+        }
+    }
+}
@@ -0,0 +1,374 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.Properties;
+
+/**
+ * What the CovidData table holds: its date range and number of records, how much of it each
+ * borough covers, and the range of dates on which each column has any values.
+ * It is worked out with a single pass over the table and saved in a file next to the database,
+ * so later startups only need to read that file. The saved catalog is only used while the size and
+ * modification time of the database (and its write-ahead log) are the same as when it was saved,
+ * so it is worked out again whenever the database has been replaced or changed.
+ *
+ * @author Muhammed Keeka
+ * @version 2024-03-25
+ */
+public class DatasetCatalog
+{
+    // Increase this whenever the format of the saved catalog changes.
+    private static final int FORMAT_VERSION = 1;
+    private static final String CATALOG_QUERY;
+    static {
+        StringBuilder query = new StringBuilder("SELECT Borough, COUNT(*), MIN(`Date`), MAX(`Date`)");
+        for(String column : CovidDataSnapshot.COLUMN_NAMES)
+            query.append(", COUNT(").append(column).append("), MIN(CASE WHEN ").append(column).append(" IS NOT NULL THEN `Date` END), MAX(CASE WHEN ")
+                .append(column).append(" IS NOT NULL THEN `Date` END)");
+        CATALOG_QUERY = query.append(" FROM CovidData GROUP BY Borough;").toString();
+    }
+
+    private int recordCount;
+    private LocalDate firstDate;
+    private LocalDate lastDate;
+    // Indexed by BoroughRegistry id. A borough without records has no dates.
+    private final int[] boroughRecords = new int[BoroughRegistry.COUNT];
+    private final LocalDate[] boroughFirstDates = new LocalDate[BoroughRegistry.COUNT];
+    private final LocalDate[] boroughLastDates = new LocalDate[BoroughRegistry.COUNT];
+    // Indexed by CovidDataSnapshot column. A column that is NULL in every record has no dates.
+    private final int[] valueCounts = new int[CovidDataSnapshot.COLUMN_COUNT];
+    private final LocalDate[] firstValueDates = new LocalDate[CovidDataSnapshot.COLUMN_COUNT];
+    private final LocalDate[] lastValueDates = new LocalDate[CovidDataSnapshot.COLUMN_COUNT];
+
+    private DatasetCatalog()
+    {
+    }
+
+    /**
+     * Reads the catalog saved next to the database, or works it out again and saves it if the
+     * saved one is missing or out of date.
+     * @param database the database file.
+     * @param conn an open connection to the database.
+     * @return the catalog.
+     */
+    public static DatasetCatalog load(File database, Connection conn) throws SQLException
+    {
+        File file = getFile(database);
+        Properties stamp = stamp(database);
+        if(file.exists())
+        {
+            try (InputStream in = new FileInputStream(file))
+            {
+                Properties saved = new Properties();
+                saved.load(in);
+                if(isCurrent(saved, stamp))
+                    return fromProperties(saved);
+            }
+            catch(IOException | RuntimeException e)
+            {
+                // An unreadable catalog is simply worked out again.
+                System.err.println(e.getClass().getName() + ": " + e.getMessage());
+            }
+        }
+        DatasetCatalog catalog = build(conn);
+        catalog.save(database);
+        return catalog;
+    }
+
+    /**
+     * Works out the catalog from the table.
+     * @param conn an open connection to the database.
+     * @return the catalog.
+     */
+    public static DatasetCatalog build(Connection conn) throws SQLException
+    {
+        DatasetCatalog catalog = new DatasetCatalog();
+        Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery(CATALOG_QUERY);
+        while(rs.next())
+        {
+            int records = rs.getInt(2);
+            LocalDate first = parse(rs.getString(3));
+            LocalDate last = parse(rs.getString(4));
+            catalog.recordCount += records;
+            catalog.firstDate = min(catalog.firstDate, first);
+            catalog.lastDate = max(catalog.lastDate, last);
+            int borough = BoroughRegistry.getId(rs.getString(1));
+            if(borough != -1)
+            {
+                catalog.boroughRecords[borough] = records;
+                catalog.boroughFirstDates[borough] = first;
+                catalog.boroughLastDates[borough] = last;
+            }
+            for(int c = 0; c < CovidDataSnapshot.COLUMN_COUNT; c++)
+            {
+                catalog.valueCounts[c] += rs.getInt(5 + 3 * c);
+                catalog.firstValueDates[c] = min(catalog.firstValueDates[c], parse(rs.getString(6 + 3 * c)));
+                catalog.lastValueDates[c] = max(catalog.lastValueDates[c], parse(rs.getString(7 + 3 * c)));
+            }
+        }
+        rs.close();
+        stmt.close();
+        return catalog;
+    }
+
+    /**
+     * Returns a copy of the catalog that also covers the records, which have just been added to the table.
+     * This catalog isn't changed.
+     * @param records the records added.
+     * @return the new catalog.
+     */
+    public DatasetCatalog append(CovidRecords records)
+    {
+        DatasetCatalog appended = new DatasetCatalog();
+        appended.recordCount = recordCount + records.size();
+        appended.firstDate = firstDate;
+        appended.lastDate = lastDate;
+        System.arraycopy(boroughRecords, 0, appended.boroughRecords, 0, boroughRecords.length);
+        System.arraycopy(boroughFirstDates, 0, appended.boroughFirstDates, 0, boroughFirstDates.length);
+        System.arraycopy(boroughLastDates, 0, appended.boroughLastDates, 0, boroughLastDates.length);
+        System.arraycopy(valueCounts, 0, appended.valueCounts, 0, valueCounts.length);
+        System.arraycopy(firstValueDates, 0, appended.firstValueDates, 0, firstValueDates.length);
+        System.arraycopy(lastValueDates, 0, appended.lastValueDates, 0, lastValueDates.length);
+        for(int row = 0; row < records.size(); row++)
+        {
+            LocalDate date = records.getDate(row);
+            int borough = records.getBoroughId(row);
+            appended.firstDate = min(appended.firstDate, date);
+            appended.lastDate = max(appended.lastDate, date);
+            appended.boroughRecords[borough]++;
+            appended.boroughFirstDates[borough] = min(appended.boroughFirstDates[borough], date);
+            appended.boroughLastDates[borough] = max(appended.boroughLastDates[borough], date);
+            for(int c = 0; c < CovidDataSnapshot.COLUMN_COUNT; c++)
+            {
+                if(!records.isNull(row, c))
+                {
+                    appended.valueCounts[c]++;
+                    appended.firstValueDates[c] = min(appended.firstValueDates[c], date);
+                    appended.lastValueDates[c] = max(appended.lastValueDates[c], date);
+                }
+            }
+        }
+        return appended;
+    }
+
+    /**
+     * Saves the catalog next to the database, stamped with the database's current size and
+     * modification time. If it can't be saved, it will be worked out again next time.
+     * @param database the database file.
+     */
+    public void save(File database)
+    {
+        Properties properties = toProperties();
+        properties.putAll(stamp(database));
+        try (OutputStream out = new FileOutputStream(getFile(database)))
+        {
+            properties.store(out, "Catalog of " + database.getName() + ", worked out again whenever the database changes");
+        }
+        catch(IOException e)
+        {
+            System.err.println(e.getClass().getName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the file the catalog of the database is saved in.
+     */
+    public static File getFile(File database)
+    {
+        return new File(database.getPath() + ".catalog");
+    }
+
+    /**
+     * @return the number of records in the table.
+     */
+    public int getRecordCount()
+    {
+        return recordCount;
+    }
+
+    /**
+     * @return the earliest date in the table, or null if it is empty.
+     */
+    public LocalDate getFirstDate()
+    {
+        return firstDate;
+    }
+
+    /**
+     * @return the latest date in the table, or null if it is empty.
+     */
+    public LocalDate getLastDate()
+    {
+        return lastDate;
+    }
+
+    /**
+     * @return the number of records of the borough.
+     */
+    public int getRecordCount(int borough)
+    {
+        return boroughRecords[borough];
+    }
+
+    /**
+     * @return the earliest date the borough has a record for, or null if it has none.
+     */
+    public LocalDate getFirstDate(int borough)
+    {
+        return boroughFirstDates[borough];
+    }
+
+    /**
+     * @return the latest date the borough has a record for, or null if it has none.
+     */
+    public LocalDate getLastDate(int borough)
+    {
+        return boroughLastDates[borough];
+    }
+
+    /**
+     * @return the number of records in which the column isn't NULL.
+     */
+    public int getValueCount(int column)
+    {
+        return valueCounts[column];
+    }
+
+    /**
+     * @return the earliest date on which the column has a value, or null if it has none.
+     */
+    public LocalDate getFirstValueDate(int column)
+    {
+        return firstValueDates[column];
+    }
+
+    /**
+     * @return the latest date on which the column has a value, or null if it has none.
+     */
+    public LocalDate getLastValueDate(int column)
+    {
+        return lastValueDates[column];
+    }
+
+    /**
+     * If this is false, the column has no values anywhere in the date range, so any sum or average
+     * of it over the range is NULL. If it is true, it may still have none, as there can be gaps.
+     * @return whether the date range overlaps the dates on which the column has values.
+     */
+    public boolean hasValues(int column, LocalDate start, LocalDate end)
+    {
+        return firstValueDates[column] != null && !end.isBefore(firstValueDates[column]) && !start.isAfter(lastValueDates[column]);
+    }
+
+    /**
+     * If this is false, the change in a cumulative column between the two dates is NULL.
+     * If it is true, it may still be NULL, as there can be gaps.
+     * @return whether both dates lie within the dates on which the column has values.
+     */
+    public boolean covers(int column, LocalDate from, LocalDate to)
+    {
+        return hasValues(column, from, from) && hasValues(column, to, to);
+    }
+
+    /**
+     * The size and modification time of the database and of its write-ahead log. Changes that are
+     * still in the log haven't reached the database file, but do make the log longer.
+     */
+    private static Properties stamp(File database)
+    {
+        Properties stamp = new Properties();
+        File log = new File(database.getPath() + "-wal");
+        stamp.setProperty("format", Integer.toString(FORMAT_VERSION));
+        stamp.setProperty("database.size", Long.toString(database.length()));
+        stamp.setProperty("database.modified", Long.toString(database.lastModified()));
+        // An empty log is left behind by any connection, and holds no changes.
+        stamp.setProperty("log.size", Long.toString(log.length()));
+        stamp.setProperty("log.modified", Long.toString(log.length() == 0 ? 0 : log.lastModified()));
+        return stamp;
+    }
+
+    private static boolean isCurrent(Properties saved, Properties stamp)
+    {
+        for(String key : stamp.stringPropertyNames())
+        {
+            if(!stamp.getProperty(key).equals(saved.getProperty(key)))
+                return false;
+        }
+        return true;
+    }
+
+    private Properties toProperties()
+    {
+        Properties properties = new Properties();
+        properties.setProperty("records", Integer.toString(recordCount));
+        setDate(properties, "first", firstDate);
+        setDate(properties, "last", lastDate);
+        for(int b = 0; b < BoroughRegistry.COUNT; b++)
+        {
+            String prefix = "borough." + BoroughRegistry.getName(b) + ".";
+            properties.setProperty(prefix + "records", Integer.toString(boroughRecords[b]));
+            setDate(properties, prefix + "first", boroughFirstDates[b]);
+            setDate(properties, prefix + "last", boroughLastDates[b]);
+        }
+        for(int c = 0; c < CovidDataSnapshot.COLUMN_COUNT; c++)
+        {
+            String prefix = "column." + CovidDataSnapshot.COLUMN_NAMES[c] + ".";
+            properties.setProperty(prefix + "values", Integer.toString(valueCounts[c]));
+            setDate(properties, prefix + "first", firstValueDates[c]);
+            setDate(properties, prefix + "last", lastValueDates[c]);
+        }
+        return properties;
+    }
+
+    private static DatasetCatalog fromProperties(Properties properties)
+    {
+        DatasetCatalog catalog = new DatasetCatalog();
+        catalog.recordCount = Integer.parseInt(properties.getProperty("records"));
+        catalog.firstDate = parse(properties.getProperty("first"));
+        catalog.lastDate = parse(properties.getProperty("last"));
+        for(int b = 0; b < BoroughRegistry.COUNT; b++)
+        {
+            String prefix = "borough." + BoroughRegistry.getName(b) + ".";
+            catalog.boroughRecords[b] = Integer.parseInt(properties.getProperty(prefix + "records"));
+            catalog.boroughFirstDates[b] = parse(properties.getProperty(prefix + "first"));
+            catalog.boroughLastDates[b] = parse(properties.getProperty(prefix + "last"));
+        }
+        for(int c = 0; c < CovidDataSnapshot.COLUMN_COUNT; c++)
+        {
+            String prefix = "column." + CovidDataSnapshot.COLUMN_NAMES[c] + ".";
+            catalog.valueCounts[c] = Integer.parseInt(properties.getProperty(prefix + "values"));
+            catalog.firstValueDates[c] = parse(properties.getProperty(prefix + "first"));
+            catalog.lastValueDates[c] = parse(properties.getProperty(prefix + "last"));
+        }
+        return catalog;
+    }
+
+    private static void setDate(Properties properties, String key, LocalDate date)
+    {
+        if(date != null)
+            properties.setProperty(key, date.toString());
+    }
+
+    private static LocalDate parse(String date)
+    {
+        return date == null ? null : LocalDate.parse(date);
+    }
+
+    private static LocalDate min(LocalDate a, LocalDate b)
+    {
+        return a == null || (b != null && b.isBefore(a)) ? b : a;
+    }
+
+    private static LocalDate max(LocalDate a, LocalDate b)
+    {
+        return a == null || (b != null && b.isAfter(a)) ? b : a;
+    }
+}
@@ -1,13 +1,26 @@
 import javafx.scene.layout.Pane;
 import javafx.scene.layout.Region;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.logging.Logger;
+import javafx.application.Platform;
+import javafx.scene.Node;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
 import javafx.scene.chart.LineChart;
 import javafx.scene.chart.NumberAxis;
 import javafx.scene.chart.XYChart;
-import javafx.scene.chart.CategoryAxis;
+import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.ComboBox;
+import javafx.scene.layout.HBox;
+import javafx.util.StringConverter;
 import java.io.IOException;
 import java.net.URL;
 import javafx.fxml.FXMLLoader;
@@ -16,6 +29,8 @@ import javafx.scene.layout.BorderPane;
 
 /**
  * Displays a graph of the Covid cases over time.
+ * A comparison graph overlays any boroughs and metrics chosen by the user. Every series
+ * the graphs show is fetched together, with a single query.
  * 
  * @author Rishi Hundia & Muhammed Keeka
  * @version 2024-03-25
@@ -25,8 +40,65 @@ public class GraphPanelController {
     private Pane root;
     @FXML
     private BorderPane innerPane;
-    private ArrayList<LineChart> graphs;
+    // The graphs in the order they are cycled through. Each is built the first time it is displayed.
+    private static final int CASES_GRAPH = 0;
+    private static final int DEATHS_GRAPH = 1;
+    private static final int COMPARISON_GRAPH = 2;
+    private final Node[] graphs = new Node[3];
+    // Whether each graph's series are older than the data, because it wasn't on display when the data arrived.
+    private final boolean[] stale = new boolean[3];
     private int currentGraphIndex;
+    private DailyChart casesChart;
+    private DailyChart deathsChart;
+    private DailyChart comparisonChart;
+    // The indexes of the series always in the request, followed by those added to the comparison graph.
+    private static final int CASES = 0;
+    private static final int DEATHS = 1;
+    private static final int FIXED_SERIES = 2;
+    private static final int ROLLING_WINDOW = 7;
+    // The metrics that can be added to the comparison graph, and their CovidDataSnapshot columns.
+    private static final Map<String, Integer> METRICS = new LinkedHashMap<>();
+    static {
+        METRICS.put("New Cases", CovidDataSnapshot.NEW_CASES);
+        METRICS.put("New Deaths", CovidDataSnapshot.NEW_DEATHS);
+        METRICS.put("Retail Recreational GMR", CovidDataSnapshot.RETAIL_RECREATIONAL_GMR);
+        METRICS.put("Grocery Pharmacy GMR", CovidDataSnapshot.GROCERY_PHARMACY_GMR);
+        METRICS.put("Parks GMR", CovidDataSnapshot.PARKS_GMR);
+        METRICS.put("Transit GMR", CovidDataSnapshot.TRANSIT_GMR);
+        METRICS.put("Workplaces GMR", CovidDataSnapshot.WORKPLACES_GMR);
+        METRICS.put("Residential GMR", CovidDataSnapshot.RESIDENTIAL_GMR);
+    }
+    // The series the graphs show. Its dates are those of the last update, or null before the first.
+    private SeriesRequest request = defaultRequest(null, null);
+    private LocalDate startDate;
+    private LocalDate endDate;
+    // The data from the last update, or null before the first.
+    private DailySeries cases;
+    private DailySeries deaths;
+    // The request the comparison graph shows, and its data.
+    private SeriesRequest comparison;
+    private DailySeries[] comparisonData;
+    private static final Logger LOGGER = Logger.getLogger(GraphPanelController.class.getName());
+    // Roughly one point every two pixels; more can't be told apart on a line.
+    private static final double POINTS_PER_PIXEL = 0.5;
+    // The width of innerPane in GraphPanel.fxml.
+    private static final double DEFAULT_WIDTH = 946;
+    // Series with more points than this are drawn without a symbol on each point.
+    private static final int SYMBOL_LIMIT = 60;
+    // Shows the x axis, which is in days since the epoch, as dates.
+    private static final StringConverter<Number> DATE_LABELS = new StringConverter<>() {
+        @Override
+        public String toString(Number day)
+        {
+            return LocalDate.ofEpochDay(Math.round(day.doubleValue())).toString();
+        }
+
+        @Override
+        public Number fromString(String date)
+        {
+            return LocalDate.parse(date).toEpochDay();
+        }
+    };
     
     public GraphPanelController()
     {
@@ -56,61 +128,335 @@ public class GraphPanelController {
         return root;
     }
     
+    /**
+     * @return a request for every series the graphs show, over the date range.
+     */
+    public SeriesRequest getRequest(LocalDate startDate, LocalDate endDate){
+        return request.forRange(startDate, endDate);
+    }
+
     /**
      * Creates all the graphs and displays the first one
      * @param startDate the start date for the data
      * @param endDate the end date for the data
      */
     public void createGraphs(LocalDate startDate, LocalDate endDate){
-        graphs = new ArrayList<>();
-        graphs.add(casesGraph(startDate, endDate));
-        graphs.add(deathsGraph(startDate, endDate));
+        SeriesRequest request = getRequest(startDate, endDate);
+        createGraphs(request, AsyncCovidDataLoader.getSeries(request).join());
+    }
+
+    /**
+     * Shows data that has already been loaded in the graphs, and displays the first one.
+     * The charts are kept between updates and their series are replaced in place. Only the graph
+     * on display is updated now; the others are updated, or built, when they are next displayed.
+     * This does not touch the database, so it is safe to call on the JavaFX thread.
+     * @param request the result of getRequest.
+     * @param series the result of CovidDataLoader.getSeries for the request.
+     */
+    public void createGraphs(SeriesRequest request, DailySeries[] series){
+        long updateStart = System.nanoTime();
+        long allocatedBefore = allocatedBytes();
+        startDate = request.getStart();
+        endDate = request.getEnd();
+        cases = series[CASES];
+        deaths = series[DEATHS];
+        Arrays.fill(stale, true);
+        // Series may have been added to the comparison while these were being fetched.
+        if(request.toString().equals(this.request.toString()))
+        {
+            comparison = request;
+            comparisonData = series;
+        }
+        else
+            fetchComparison();
         currentGraphIndex = 0;
-        innerPane.setCenter(graphs.get(currentGraphIndex));
+        showGraph(currentGraphIndex);
+        logUpdate(updateStart, allocatedBefore);
     }
-    
+
     /**
-     * Creates a LineChart graph displaying the number of cases over time
-     * @param startDate the start date for the data
-     * @param endDate the end date for the data
-     * @return the LineChart created
+     * Displays a graph, building it the first time and bringing its series up to date.
      */
-    private LineChart<String, Number> casesGraph(LocalDate startDate, LocalDate endDate) {
-        CategoryAxis xAxis = new CategoryAxis();
-        xAxis.setLabel("Date");
-        NumberAxis yAxis = new NumberAxis();
-        yAxis.setLabel("Covid Cases");
-        LineChart<String,Number> lc = new LineChart<>(xAxis,yAxis);
-        lc.setTitle("Covid Cases Over Time");
-        XYChart.Series series = new XYChart.Series();
-        series.setName("New Cases Per Day");
-        Map<LocalDate, Integer> data = CovidDataLoader.getCasesPerDay(startDate, endDate);
-        Set<LocalDate> keys = data.keySet();
-        keys.stream().filter(e -> data.get(e) != null).forEach(e -> series.getData().add(new XYChart.Data(e.toString(), data.get(e))));
-        lc.getData().add(series);
-        return lc;
-    }
-
-     /**
-     * Creates a LineChart graph displaying the number of deaths over time.
-     * @param startDate the start date for the data
-     * @param endDate the end date for the data
-     * @return the LineChart created
+    private void showGraph(int index) {
+        if(graphs[index] == null)
+            buildGraph(index);
+        if(stale[index])
+        {
+            stale[index] = false;
+            if(index == CASES_GRAPH && cases != null)
+                casesChart.setSeries(0, "New Cases Per Day", cases);
+            else if(index == DEATHS_GRAPH && deaths != null)
+                deathsChart.setSeries(0, "New Deaths Per Day", deaths);
+            else if(index == COMPARISON_GRAPH && comparison != null)
+            {
+                comparisonChart.setSeriesCount(comparison.size() - FIXED_SERIES);
+                for(int i = FIXED_SERIES; i < comparison.size(); i++)
+                    comparisonChart.setSeries(i - FIXED_SERIES, comparison.getLabel(i), comparisonData[i]);
+            }
+        }
+        innerPane.setCenter(graphs[index]);
+    }
+
+    private void buildGraph(int index) {
+        if(index == CASES_GRAPH)
+        {
+            casesChart = new DailyChart("Covid Cases Over Time", "Covid Cases");
+            graphs[index] = casesChart.chart;
+        }
+        else if(index == DEATHS_GRAPH)
+        {
+            deathsChart = new DailyChart("Covid Deaths Over Time", "Covid Deaths");
+            graphs[index] = deathsChart.chart;
+        }
+        else
+            graphs[index] = buildComparison();
+    }
+
+    /**
+     * Builds the graph that overlays any boroughs and metrics the user adds to it.
+     */
+    private Node buildComparison() {
+        ComboBox<String> boroughBox = new ComboBox<>();
+        boroughBox.getItems().add("All of London");
+        boroughBox.getItems().addAll(BoroughRegistry.getNames());
+        boroughBox.getSelectionModel().select(0);
+        ComboBox<String> metricBox = new ComboBox<>();
+        metricBox.getItems().addAll(METRICS.keySet());
+        metricBox.getSelectionModel().select(0);
+        CheckBox rollingBox = new CheckBox("7-day average");
+        Button addButton = new Button("Add");
+        addButton.setOnAction(e -> {
+            // The first item is all of London, and the boroughs follow in id order.
+            int borough = boroughBox.getSelectionModel().getSelectedIndex() - 1;
+            SeriesRequest next = request.forRange(startDate, endDate);
+            next.add(borough, METRICS.get(metricBox.getValue()), rollingBox.isSelected() ? ROLLING_WINDOW : 1);
+            request = next;
+            fetchComparison();
+        });
+        Button clearButton = new Button("Clear");
+        clearButton.setOnAction(e -> {
+            request = defaultRequest(startDate, endDate);
+            showComparison(request, new DailySeries[request.size()]);
+        });
+        comparisonChart = new DailyChart("Comparison", "Value");
+        BorderPane comparisonPane = new BorderPane();
+        comparisonPane.setTop(new HBox(5, boroughBox, metricBox, rollingBox, addButton, clearButton));
+        comparisonPane.setCenter(comparisonChart.chart);
+        return comparisonPane;
+    }
+
+    /**
+     * Fetches the series of the comparison graph in the background, and shows them when they arrive.
+     */
+    private void fetchComparison() {
+        if(startDate == null)
+            return;
+        SeriesRequest fetched = request;
+        AsyncCovidDataLoader.getSeries(fetched).thenAccept(series -> Platform.runLater(() -> {
+            // Only the latest request is shown.
+            if(fetched == request)
+                showComparison(fetched, series);
+        }));
+    }
+
+    /**
+     * Updates the comparison graph with the series added to it, now if it is on display.
+     */
+    private void showComparison(SeriesRequest request, DailySeries[] series) {
+        comparison = request;
+        comparisonData = series;
+        stale[COMPARISON_GRAPH] = true;
+        if(currentGraphIndex == COMPARISON_GRAPH)
+            showGraph(COMPARISON_GRAPH);
+    }
+
+    /**
+     * @return a request for the series that are always shown: new cases and new deaths across London.
      */
-    private LineChart<String, Number> deathsGraph(LocalDate startDate, LocalDate endDate) {
-        CategoryAxis xAxis = new CategoryAxis();
-        xAxis.setLabel("Date");
-        NumberAxis yAxis = new NumberAxis();
-        yAxis.setLabel("Covid Deaths");
-        LineChart<String,Number> lc = new LineChart<>(xAxis,yAxis);
-        lc.setTitle("Covid Deaths Over Time");
-        XYChart.Series series = new XYChart.Series();
-        series.setName("New Deaths Per Day");
-        Map<LocalDate, Integer> data = CovidDataLoader.getDeathsPerDay(startDate, endDate);
-        Set<LocalDate> keys = data.keySet();
-        keys.stream().filter(e -> data.get(e) != null).forEach(e -> series.getData().add(new XYChart.Data(e.toString(), data.get(e))));
-        lc.getData().add(series);
-        return lc;
+    private static SeriesRequest defaultRequest(LocalDate startDate, LocalDate endDate) {
+        SeriesRequest request = new SeriesRequest(startDate, endDate);
+        request.add(SeriesRequest.ALL_BOROUGHS, CovidDataSnapshot.NEW_CASES, 1);
+        request.add(SeriesRequest.ALL_BOROUGHS, CovidDataSnapshot.NEW_DEATHS, 1);
+        return request;
+    }
+
+    /**
+     * Logs how long the update took, how long until the graph on display was laid out, and how
+     * much the JavaFX thread allocated in that time. The layout is only logged if the panel is showing.
+     */
+    private void logUpdate(long updateStart, long allocatedBefore) {
+        double updateMillis = (System.nanoTime() - updateStart) / 1e6;
+        Node graph = graphs[currentGraphIndex];
+        Scene scene = innerPane.getScene();
+        if(scene == null)
+        {
+            LOGGER.info(String.format("Graphs updated in %.1f ms, %d KB allocated", updateMillis, (allocatedBytes() - allocatedBefore) / 1024));
+            return;
+        }
+        Runnable firstPulse = new Runnable() {
+            private boolean logged = false;
+
+            @Override
+            public void run()
+            {
+                if(logged)
+                    return;
+                logged = true;
+                double layoutMillis = (System.nanoTime() - updateStart) / 1e6;
+                LOGGER.info(String.format("Graphs updated in %.1f ms and laid out after %.1f ms, %d KB allocated, %d nodes",
+                    updateMillis, layoutMillis, (allocatedBytes() - allocatedBefore) / 1024, countNodes(graph)));
+                // Removing the listener while the listeners are being run isn't allowed
+                Platform.runLater(() -> scene.removePostLayoutPulseListener(this));
+            }
+        };
+        scene.addPostLayoutPulseListener(firstPulse);
+    }
+
+    /**
+     * @return the bytes allocated by the current thread so far, or 0 if the JVM can't tell.
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if(threads instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) threads).getCurrentThreadAllocatedBytes();
+        return 0;
+    }
+
+    private static int countNodes(Node node) {
+        int count = 1;
+        if(node instanceof Parent)
+        {
+            for(Node child : ((Parent) node).getChildrenUnmodifiable())
+            {
+                count += countNodes(child);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * A LineChart of values per day, kept for the life of the panel. The x axis is numeric, in days
+     * since the epoch, and its labels are shown as dates. Animation is off, so new data is drawn
+     * in one layout. Each series is downsampled to the chart's width, and again when it is resized.
+     */
+    private static class DailyChart
+    {
+        private final LineChart<Number, Number> chart;
+        private final List<DownsampledSeries> series = new ArrayList<>();
+
+        DailyChart(String title, String yLabel)
+        {
+            NumberAxis xAxis = new NumberAxis();
+            xAxis.setLabel("Date");
+            xAxis.setForceZeroInRange(false);
+            xAxis.setTickLabelFormatter(DATE_LABELS);
+            xAxis.setAnimated(false);
+            NumberAxis yAxis = new NumberAxis();
+            yAxis.setLabel(yLabel);
+            yAxis.setAnimated(false);
+            chart = new LineChart<>(xAxis, yAxis);
+            chart.setTitle(title);
+            chart.setAnimated(false);
+            chart.widthProperty().addListener((observable, oldValue, newValue) -> {
+                if(newValue.doubleValue() > 0)
+                {
+                    for(DownsampledSeries s : series)
+                        s.resample(threshold(), false);
+                    updateSymbols();
+                }
+            });
+        }
+
+        /**
+         * Adds or removes series so that the chart has count of them.
+         */
+        void setSeriesCount(int count)
+        {
+            while(series.size() > count)
+                chart.getData().remove(series.remove(series.size() - 1).series);
+            while(series.size() < count)
+            {
+                DownsampledSeries added = new DownsampledSeries();
+                series.add(added);
+                chart.getData().add(added.series);
+            }
+        }
+
+        /**
+         * Replaces the data of a series, adding it if the chart has fewer. Days without a value are left out.
+         */
+        void setSeries(int index, String name, DailySeries data)
+        {
+            if(series.size() <= index)
+                setSeriesCount(index + 1);
+            DownsampledSeries s = series.get(index);
+            s.series.setName(name);
+            s.setData(data);
+            s.resample(threshold(), true);
+            updateSymbols();
+        }
+
+        private int threshold()
+        {
+            // Before the chart is laid out, the panel's preferred width is the best guess.
+            double width = chart.getWidth() > 0 ? chart.getWidth() : DEFAULT_WIDTH;
+            return Math.max(3, (int) (width * POINTS_PER_PIXEL));
+        }
+
+        /**
+         * A symbol is a node per point, which is only worth it when the points are far apart.
+         */
+        private void updateSymbols()
+        {
+            int points = 0;
+            for(DownsampledSeries s : series)
+                points = Math.max(points, s.series.getData().size());
+            chart.setCreateSymbols(points <= SYMBOL_LIMIT);
+        }
+    }
+
+    /**
+     * A chart's series with all of its days kept aside, so that only as many points as the
+     * chart has room for are added to it. The arrays are reused when the data is replaced.
+     */
+    private static class DownsampledSeries
+    {
+        private final XYChart.Series<Number, Number> series = new XYChart.Series<>();
+        private double[] days = new double[0];
+        private double[] values = new double[0];
+        private int length = 0;
+        private int threshold = -1;
+
+        void setData(DailySeries data)
+        {
+            int count = data.getValueCount();
+            if(days.length < count)
+            {
+                days = new double[count];
+                values = new double[count];
+            }
+            length = 0;
+            data.forEach((day, value) -> {
+                days[length] = day;
+                values[length] = value;
+                length++;
+            });
+        }
+
+        /**
+         * Replaces the points in one go, unless the number wanted hasn't changed and force is false.
+         */
+        void resample(int wanted, boolean force)
+        {
+            if(wanted == threshold && !force)
+                return;
+            threshold = wanted;
+            int[] kept = SeriesDownsampler.largestTriangleThreeBuckets(days, values, length, threshold);
+            List<XYChart.Data<Number, Number>> points = new ArrayList<>(kept.length);
+            for(int i : kept)
+                points.add(new XYChart.Data<>(days[i], values[i]));
+            series.getData().setAll(points);
+        }
     }
     
     /**
@@ -118,11 +464,11 @@ public class GraphPanelController {
      */
     @FXML
     private void nextGraph() {
-        if(currentGraphIndex != graphs.size()-1)
+        if(currentGraphIndex != graphs.length-1)
             currentGraphIndex++;
         else
             currentGraphIndex = 0;
-        innerPane.setCenter(graphs.get(currentGraphIndex));
+        showGraph(currentGraphIndex);
     }
     
     /**
@@ -133,7 +479,7 @@ public class GraphPanelController {
         if(currentGraphIndex != 0)
             currentGraphIndex--;
         else
-            currentGraphIndex = graphs.size()-1;
-        innerPane.setCenter(graphs.get(currentGraphIndex));
+            currentGraphIndex = graphs.length-1;
+        showGraph(currentGraphIndex);
     }
 }
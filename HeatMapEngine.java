@@ -0,0 +1,308 @@
+import java.time.LocalDate;
+import java.util.Arrays;
+import javafx.scene.paint.Color;
+
+/**
+ * Computes the heat map's colours from the in-memory data, without querying the database.
+ * For the chosen metric it works out each borough's value over the date range, and the
+ * minimum, maximum and quantiles of those values, in one pass over the boroughs.
+ * Each borough is then given a bucket of the palette: either one of many steps of a
+ * continuous scale between the minimum and the maximum, or its n-quantile.
+ * The arrays are reused between updates, so recomputing it on every date change is cheap.
+ *
+ * @author Muhammed Keeka
+ * @version 2024-03-25
+ */
+public class HeatMapEngine
+{
+    // The bucket of a borough with no value for the date range.
+    public static final int NO_DATA = -1;
+    // The number of colours the continuous scale is divided into.
+    public static final int CONTINUOUS_STEPS = 32;
+    // The colours the palettes are interpolated between, from the lowest value to the highest.
+    private static final Color[] STOPS = {Color.GREEN, Color.rgb(255, 200, 0), Color.rgb(255, 100, 0), Color.RED};
+    private static final Color NO_DATA_COLOUR = Color.rgb(44, 62, 80);
+
+    /**
+     * What the heat map shows for each borough.
+     */
+    public enum Metric
+    {
+        CASES("Cases", CovidDataSnapshot.TOTAL_CASES, false),
+        DEATHS("Deaths", CovidDataSnapshot.TOTAL_DEATHS, false),
+        CASES_PER_100K("Cases per 100,000", CovidDataSnapshot.TOTAL_CASES, true),
+        DEATHS_PER_100K("Deaths per 100,000", CovidDataSnapshot.TOTAL_DEATHS, true),
+        RETAIL_RECREATIONAL_GMR("Retail Recreational GMR", CovidDataSnapshot.RETAIL_RECREATIONAL_GMR, false),
+        GROCERY_PHARMACY_GMR("Grocery Pharmacy GMR", CovidDataSnapshot.GROCERY_PHARMACY_GMR, false),
+        PARKS_GMR("Parks GMR", CovidDataSnapshot.PARKS_GMR, false),
+        TRANSIT_GMR("Transit GMR", CovidDataSnapshot.TRANSIT_GMR, false),
+        WORKPLACES_GMR("Workplaces GMR", CovidDataSnapshot.WORKPLACES_GMR, false),
+        RESIDENTIAL_GMR("Residential GMR", CovidDataSnapshot.RESIDENTIAL_GMR, false);
+
+        private final String label;
+        private final int column;
+        private final boolean perCapita;
+
+        Metric(String label, int column, boolean perCapita)
+        {
+            this.label = label;
+            this.column = column;
+            this.perCapita = perCapita;
+        }
+
+        /**
+         * @return whether the metric is the change in a cumulative total, rather than an average.
+         */
+        public boolean isCumulative()
+        {
+            return column == CovidDataSnapshot.TOTAL_CASES || column == CovidDataSnapshot.TOTAL_DEATHS;
+        }
+
+        @Override
+        public String toString()
+        {
+            return label;
+        }
+    }
+
+    private final int quantiles;
+    private final Color[] palette;
+    private final double[] values = new double[BoroughRegistry.COUNT];
+    private final int[] buckets = new int[BoroughRegistry.COUNT];
+    private final double[] sorted = new double[BoroughRegistry.COUNT];
+    private final double[] thresholds;
+    private int valueCount;
+    private double min, max;
+
+    /**
+     * @param quantiles the number of quantiles to divide the boroughs into, or 0 for a continuous scale.
+     */
+    public HeatMapEngine(int quantiles)
+    {
+        this.quantiles = quantiles;
+        palette = createPalette(quantiles == 0 ? CONTINUOUS_STEPS : quantiles);
+        thresholds = new double[Math.max(0, quantiles - 1)];
+    }
+
+    /**
+     * Works out the values and buckets of every borough.
+     * @param engine the in-memory data.
+     * @param metric what to show.
+     * @param start the start date.
+     * @param end the end date.
+     */
+    public void compute(RangeQueryEngine engine, Metric metric, LocalDate start, LocalDate end)
+    {
+        for(int id = 0; id < BoroughRegistry.COUNT; id++)
+            values[id] = valueOf(engine, metric, id, start, end);
+        setBuckets();
+    }
+
+    /**
+     * Works out the values and buckets of every borough from CovidDataLoader.getBoroughDeltas,
+     * for when the data couldn't be loaded into memory. The deltas only have cases and deaths,
+     * so every borough has no data for the GMR metrics.
+     * @param deltas {cases, deaths} for each borough over the date range.
+     * @param metric what to show.
+     */
+    public void compute(Integer[][] deltas, Metric metric)
+    {
+        for(int id = 0; id < BoroughRegistry.COUNT; id++)
+        {
+            Integer delta = null;
+            if(deltas[id] != null && metric.isCumulative())
+                delta = deltas[id][metric.column == CovidDataSnapshot.TOTAL_CASES ? 0 : 1];
+            values[id] = delta == null ? Double.NaN : perCapita(metric, id, delta);
+        }
+        setBuckets();
+    }
+
+    /**
+     * Works out the minimum, maximum, quantiles and buckets of the values.
+     */
+    private void setBuckets()
+    {
+        valueCount = 0;
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+        for(int id = 0; id < BoroughRegistry.COUNT; id++)
+        {
+            double value = values[id];
+            if(!Double.isNaN(value))
+            {
+                sorted[valueCount++] = value;
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+        }
+        setThresholds(sorted, valueCount);
+        for(int id = 0; id < BoroughRegistry.COUNT; id++)
+            buckets[id] = bucketOf(values[id]);
+    }
+
+    /**
+     * Works out the bucket of every borough on every day, for playing the heat map as an animation.
+     * Each day's value covers the window of days ending on it. The minimum, maximum and quantiles
+     * are taken over all the days, so that the colours of different days can be compared.
+     * Afterwards getMin, getMax and getThresholds describe the whole timeline.
+     * @param engine the in-memory data.
+     * @param metric what to show.
+     * @param first the first day.
+     * @param days the number of days.
+     * @param window the number of days each value covers.
+     * @return the buckets, with day d's bucket for borough id at index d * BoroughRegistry.COUNT + id.
+     */
+    public byte[] computeTimeline(RangeQueryEngine engine, Metric metric, LocalDate first, int days, int window)
+    {
+        double[] timeline = new double[days * BoroughRegistry.COUNT];
+        double[] found = new double[timeline.length];
+        int foundCount = 0;
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+        for(int day = 0; day < days; day++)
+        {
+            LocalDate end = first.plusDays(day);
+            LocalDate start = end.minusDays(window - 1);
+            for(int id = 0; id < BoroughRegistry.COUNT; id++)
+            {
+                double value = valueOf(engine, metric, id, start, end);
+                timeline[day * BoroughRegistry.COUNT + id] = value;
+                if(!Double.isNaN(value))
+                {
+                    found[foundCount++] = value;
+                    min = Math.min(min, value);
+                    max = Math.max(max, value);
+                }
+            }
+        }
+        setThresholds(found, foundCount);
+        byte[] frames = new byte[timeline.length];
+        for(int i = 0; i < timeline.length; i++)
+            frames[i] = (byte) bucketOf(timeline[i]);
+        return frames;
+    }
+
+    /**
+     * @return the borough's value of the metric over the date range, or NaN if it has none.
+     */
+    private static double valueOf(RangeQueryEngine engine, Metric metric, int id, LocalDate start, LocalDate end)
+    {
+        if(metric.isCumulative())
+        {
+            // The change in the running total from the day before start to end, as getCases and getDeaths work it out.
+            CovidDataSnapshot snapshot = engine.getSnapshot();
+            int from = snapshot.getDayIndex(start.minusDays(1));
+            int to = snapshot.getDayIndex(end);
+            if(from == -1 || to == -1 || !snapshot.hasValue(metric.column, id, from) || !snapshot.hasValue(metric.column, id, to))
+                return Double.NaN;
+            return perCapita(metric, id, snapshot.getValue(metric.column, id, to) - snapshot.getValue(metric.column, id, from));
+        }
+        int count = engine.getCount(metric.column, id, start, end);
+        if(count == 0)
+            return Double.NaN;
+        return (double) engine.getSum(metric.column, id, start, end) / count;
+    }
+
+    /**
+     * @return the change in a total, per 100,000 people if the metric is per capita.
+     */
+    private static double perCapita(Metric metric, int id, int delta)
+    {
+        if(metric.perCapita)
+            return delta * 100000.0 / BoroughRegistry.getPopulation(id);
+        return delta;
+    }
+
+    /**
+     * Works out the quantiles of the values. This sorts the first count values of the array.
+     */
+    private void setThresholds(double[] found, int count)
+    {
+        if(quantiles > 0 && count > 0)
+        {
+            Arrays.sort(found, 0, count);
+            for(int k = 1; k < quantiles; k++)
+                thresholds[k - 1] = found[k * count / quantiles];
+        }
+    }
+
+    private int bucketOf(double value)
+    {
+        if(Double.isNaN(value))
+            return NO_DATA;
+        if(quantiles > 0)
+        {
+            int bucket = 0;
+            while(bucket < thresholds.length && value >= thresholds[bucket])
+                bucket++;
+            return bucket;
+        }
+        if(max == min)
+            return CONTINUOUS_STEPS - 1;
+        return (int) Math.round((value - min) / (max - min) * (CONTINUOUS_STEPS - 1));
+    }
+
+    /**
+     * @return the borough's bucket from the last computation, or NO_DATA.
+     */
+    public int getBucket(int id)
+    {
+        return buckets[id];
+    }
+
+    /**
+     * @return the colour of a bucket. NO_DATA has a colour of its own.
+     * The colours are created once, so this allocates nothing.
+     */
+    public Color getColour(int bucket)
+    {
+        return bucket == NO_DATA ? NO_DATA_COLOUR : palette[bucket];
+    }
+
+    /**
+     * @return the borough's value from the last computation, or NaN if it has none.
+     */
+    public double getValue(int id)
+    {
+        return values[id];
+    }
+
+    /**
+     * @return the smallest value from the last computation, or infinity if no borough had one.
+     */
+    public double getMin()
+    {
+        return min;
+    }
+
+    /**
+     * @return the largest value from the last computation, or -infinity if no borough had one.
+     */
+    public double getMax()
+    {
+        return max;
+    }
+
+    /**
+     * @return the values at which each quantile after the first starts. Empty for a continuous scale.
+     */
+    public double[] getThresholds()
+    {
+        return thresholds.clone();
+    }
+
+    /**
+     * Spreads the colours evenly along the stops, so with four colours the palette is exactly the stops.
+     */
+    private static Color[] createPalette(int size)
+    {
+        Color[] colours = new Color[size];
+        for(int i = 0; i < size; i++)
+        {
+            double position = size == 1 ? 0 : (double) i / (size - 1) * (STOPS.length - 1);
+            int stop = Math.min((int) position, STOPS.length - 2);
+            colours[i] = STOPS[stop].interpolate(STOPS[stop + 1], position - stop);
+        }
+        return colours;
+    }
+}
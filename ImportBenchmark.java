@@ -0,0 +1,117 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.Random;
+
+/**
+ * Measures how quickly CovidDataImporter imports a large CSV file. A synthetic file in the form
+ * of the original data is written first, with a row for every borough on each day and no
+ * TotalCases or TotalDeaths, so the importer has to work them out. The time taken just to scan it
+ * is reported too, to show how much of the import is parsing and how much is SQLite.
+ * Usage: java ImportBenchmark [rows], which defaults to 10,000,000 rows. The files are deleted afterwards.
+ *
+ * @author Muhammed Keeka
+ * @version 2024-03-25
+ */
+public class ImportBenchmark
+{
+    private static final int DEFAULT_ROWS = 10000000;
+
+    public static void main(String[] args) throws Exception
+    {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ROWS;
+        File csv = File.createTempFile("covid_london", ".csv");
+        File database = File.createTempFile("CovidData", ".db");
+        try
+        {
+            long writeStart = System.nanoTime();
+            writeCsv(csv, rows);
+            System.out.printf("Wrote %,d rows (%,d MB) in %.1f s%n", rows, csv.length() >> 20, (System.nanoTime() - writeStart) / 1e9);
+
+            long scanStart = System.nanoTime();
+            long checksum = scan(csv);
+            double scanSeconds = (System.nanoTime() - scanStart) / 1e9;
+            System.out.printf("Scanned in %.1f s: %,.0f rows/s, %.0f MB/s (checksum %d)%n", scanSeconds, rows / scanSeconds, (csv.length() >> 20) / scanSeconds, checksum);
+
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + database.getPath()))
+            {
+                CovidDataImporter.Result result = CovidDataImporter.importCsv(csv.getPath(), conn);
+                System.out.printf("Imported %,d rows in %.1f s (inserting %.1f s, indexing %.1f s): %,.0f rows/s%n", result.getRows(),
+                    (result.getInsertNanos() + result.getIndexNanos()) / 1e9, result.getInsertNanos() / 1e9, result.getIndexNanos() / 1e9, result.getRowsPerSecond());
+                Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT COUNT(*), MAX(TotalCases) FROM CovidData;");
+                rs.next();
+                System.out.printf("The table has %,d rows, the largest TotalCases is %,d%n", rs.getLong(1), rs.getLong(2));
+                rs.close();
+                stmt.close();
+            }
+        }
+        finally
+        {
+            csv.delete();
+            database.delete();
+            new File(database.getPath() + "-wal").delete();
+            new File(database.getPath() + "-shm").delete();
+        }
+    }
+
+    /**
+     * Writes rows for all the boroughs a day at a time, with random values and empty totals.
+     */
+    private static void writeCsv(File csv, int rows) throws IOException
+    {
+        Random random = new Random(42);
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(csv), 1 << 16))
+        {
+            out.write("date,area_name,area_code,retail_recreation,grocery_pharmacy,parks,transit_stations,workplaces,residential,new_cases,total_cases,new_deaths,total_deaths\n");
+            LocalDate date = LocalDate.of(2020, 2, 3);
+            StringBuilder line = new StringBuilder();
+            for(int row = 0; row < rows; row++)
+            {
+                int borough = row % BoroughRegistry.COUNT;
+                if(borough == 0 && row > 0)
+                    date = date.plusDays(1);
+                line.setLength(0);
+                line.append(date).append(',').append(BoroughRegistry.getName(borough)).append(",E0900").append(borough);
+                for(int gmr = 0; gmr < 6; gmr++)
+                {
+                    line.append(',');
+                    // Like the real data, some of the mobility reports are missing.
+                    if(random.nextInt(20) != 0)
+                        line.append(random.nextInt(161) - 80);
+                }
+                line.append(',').append(random.nextInt(400)).append(",,").append(random.nextInt(3)).append(",\n");
+                out.append(line);
+            }
+        }
+    }
+
+    /**
+     * Scans every field of the file without touching a database.
+     */
+    private static long scan(File csv) throws IOException
+    {
+        long checksum = 0;
+        try (CsvScanner scanner = new CsvScanner(new FileInputStream(csv)))
+        {
+            scanner.nextLine();
+            while(scanner.nextLine())
+            {
+                checksum += scanner.getEpochDay(0);
+                for(int field = 3; field < scanner.getFieldCount(); field++)
+                {
+                    if(!scanner.isEmpty(field))
+                        checksum += scanner.getInt(field);
+                }
+            }
+        }
+        return checksum;
+    }
+}
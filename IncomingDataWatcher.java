@@ -0,0 +1,140 @@
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Watches a folder for CSV files of new days and appends them with CovidDataLoader.appendCsv,
+ * so the latest data shows up without restarting. Files already in the folder are appended first,
+ * in name order, so daily files named by date go in in date order.
+ * Each file is renamed to end in .done once it has been appended, or .rejected if it couldn't be.
+ * Files should be written elsewhere and moved into the folder, so that a half-written file isn't read.
+ *
+ * @author Muhammed Keeka
+ * @version 2024-03-25
+ */
+public class IncomingDataWatcher implements Runnable
+{
+    private static final Logger LOGGER = Logger.getLogger(IncomingDataWatcher.class.getName());
+
+    private final Path folder;
+    private final Consumer<DatasetCatalog> onAppend;
+    private WatchService watcher;
+
+    /**
+     * @param folder the folder to watch.
+     * @param onAppend given the updated catalog after each file is appended, on the watcher's thread.
+     */
+    public IncomingDataWatcher(Path folder, Consumer<DatasetCatalog> onAppend)
+    {
+        this.folder = folder;
+        this.onAppend = onAppend;
+    }
+
+    /**
+     * Starts watching on a daemon thread.
+     * @throws IOException if the folder can't be watched.
+     */
+    public void start() throws IOException
+    {
+        watcher = FileSystems.getDefault().newWatchService();
+        // Registered before the files already there are listed, so none are missed in between.
+        folder.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        Thread thread = new Thread(this, "incoming-data-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        LOGGER.info("Watching " + folder + " for new data");
+    }
+
+    /**
+     * Stops watching.
+     */
+    public void stop()
+    {
+        try
+        {
+            watcher.close();
+        }
+        catch (IOException e)
+        {
+            System.err.println(e.getClass().getName() + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        appendWaitingFiles();
+        try
+        {
+            while(true)
+            {
+                WatchKey key = watcher.take();
+                // Which file it was doesn't matter: whatever is waiting is appended in name order.
+                key.pollEvents();
+                key.reset();
+                appendWaitingFiles();
+            }
+        }
+        catch (InterruptedException | ClosedWatchServiceException e)
+        {
+            // Stopped.
+        }
+    }
+
+    /**
+     * Appends every CSV file in the folder, in name order.
+     */
+    private void appendWaitingFiles()
+    {
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> list = Files.list(folder))
+        {
+            list.filter(file -> file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".csv")).forEach(files::add);
+        }
+        catch (IOException e)
+        {
+            System.err.println(e.getClass().getName() + ": " + e.getMessage());
+            return;
+        }
+        Collections.sort(files);
+        for(Path file : files)
+            append(file);
+    }
+
+    private void append(Path file)
+    {
+        DatasetCatalog catalog = null;
+        try
+        {
+            catalog = CovidDataLoader.appendCsv(file.toString());
+        }
+        catch (IOException | SQLException | RuntimeException e)
+        {
+            System.err.println(file + ": " + e.getClass().getName() + ": " + e.getMessage());
+        }
+        try
+        {
+            Files.move(file, file.resolveSibling(file.getFileName() + (catalog == null ? ".rejected" : ".done")), StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (IOException e)
+        {
+            System.err.println(e.getClass().getName() + ": " + e.getMessage());
+        }
+        if(catalog != null)
+            onAppend.accept(catalog);
+    }
+}
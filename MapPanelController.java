@@ -1,5 +1,8 @@
+import javafx.animation.AnimationTimer;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
+import javafx.scene.control.Button;
+import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
 import javafx.scene.layout.AnchorPane;
 import javafx.scene.text.Text;
@@ -18,11 +21,16 @@ import javafx.scene.layout.BackgroundPosition;
 import javafx.scene.layout.BackgroundRepeat;
 import javafx.scene.layout.BackgroundSize;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.time.LocalDate;
-import javafx.scene.paint.Paint;
 import javafx.scene.layout.FlowPane;
 import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
 
 /**
  * This is the controller class for the map panel.
@@ -38,9 +46,42 @@ public class MapPanelController {
     private static final String API_KEY = "ENTER_API_KEY_HERE";
     private Pane root;
     private String boroughName;
+    // Each borough's Polygon and the palette index of its colour, indexed by BoroughRegistry id.
+    private Polygon[] polygons;
+    private int[] buckets;
+    // The bucket of a polygon that hasn't been coloured yet, or must be recoloured.
+    private static final int UNSET = -2;
+    // The id of the borough under the mouse, which is shown in white, or -1.
+    private int hovered = -1;
+    private static final Logger LOGGER = Logger.getLogger(MapPanelController.class.getName());
+
+    // The heat map's scales, and how many quantiles each divides the boroughs into. 0 means continuous.
+    private static final Map<String, Integer> SCALES = new LinkedHashMap<>();
+    static {
+        SCALES.put("Quartiles", 4);
+        SCALES.put("Quintiles", 5);
+        SCALES.put("Deciles", 10);
+        SCALES.put("Continuous", 0);
+    }
+    private HeatMapEngine heatMap = new HeatMapEngine(4);
+    private ComboBox<HeatMapEngine.Metric> metricBox;
+    private ComboBox<String> scaleBox;
+    // The data the heat map was last computed from, or null before the first update.
+    private RangeQueryEngine data;
+    // Each borough's deltas over the date range, from SQL, if the data couldn't be loaded into memory.
+    private Integer[][] deltas;
+    // The time-lapse shows one day per frame, each coloured by the week ending on it.
+    private static final int PLAYBACK_FPS = 30;
+    private static final int PLAYBACK_WINDOW = 7;
+    private Button playButton;
+    private Label dayLabel;
+    // The time-lapse that is playing, or null.
+    private Playback playback;
     private Label currentBorough;
     private LocalDate startDate;
     private LocalDate endDate;
+    // The decoded background, shared by every map panel.
+    private static Image londonImage;
 
     public MapPanelController()
     {
@@ -65,6 +106,17 @@ public class MapPanelController {
             throw new RuntimeException("WebEngine is null.");
         }
         setupImageBackground();
+        polygons = new Polygon[BoroughRegistry.COUNT];
+        buckets = new int[BoroughRegistry.COUNT];
+        Arrays.fill(buckets, UNSET);
+        for(Polygon p: getPolygonList()){
+            int id = BoroughRegistry.getId(p.getParent().getId());
+            if(id != -1)
+            {
+                polygons[id] = p;
+                setupHoverEffect(id);
+            }
+        }
         currentBorough = new Label("");
         currentBorough.setStyle("-fx-text-fill: #ffffff");
         Pane tmp = (Pane) root.getChildren().get(0);
@@ -72,6 +124,45 @@ public class MapPanelController {
         bp.setCenter(currentBorough);
         bp.setStyle("-fx-background-color: #000000");
         tmp.getChildren().add(bp);
+        setupHeatMapControls(bp);
+    }
+
+    /**
+     * Adds the boxes that choose what the heat map shows and how it is coloured.
+     * Changing either recolours the map from the data already in memory.
+     */
+    private void setupHeatMapControls(BorderPane bp)
+    {
+        metricBox = new ComboBox<>();
+        metricBox.getItems().addAll(HeatMapEngine.Metric.values());
+        metricBox.setValue(HeatMapEngine.Metric.DEATHS);
+        metricBox.valueProperty().addListener((observable, oldValue, newValue) -> {
+            stopPlayback();
+            recompute();
+        });
+        scaleBox = new ComboBox<>();
+        scaleBox.getItems().addAll(SCALES.keySet());
+        scaleBox.setValue("Quartiles");
+        scaleBox.valueProperty().addListener((observable, oldValue, newValue) -> {
+            stopPlayback();
+            heatMap = new HeatMapEngine(SCALES.get(newValue));
+            // The palette has changed, so every polygon must be recoloured.
+            Arrays.fill(buckets, UNSET);
+            recompute();
+        });
+        playButton = new Button("Play");
+        playButton.setOnAction(e -> {
+            if(playback == null)
+                startPlayback();
+            else
+            {
+                stopPlayback();
+                recompute();
+            }
+        });
+        dayLabel = new Label("");
+        dayLabel.setStyle("-fx-text-fill: #ffffff");
+        bp.setBottom(new HBox(5, metricBox, scaleBox, playButton, dayLabel));
     }
 
     /**
@@ -86,7 +177,7 @@ public class MapPanelController {
      */
      private void setupImageBackground()
      {
-         Image image = new Image(getClass().getResourceAsStream("London.jpg"));
+         Image image = loadBackground();
          // This image is free for use: https://pixabay.com/photos/london-sunrise-england-city-river-5354315/
          BackgroundImage backgroundImage = new BackgroundImage(
                  image,
@@ -100,6 +191,18 @@ public class MapPanelController {
         root.setBackground(background);
     }
 
+    /**
+     * Decodes the background image, unless it already has been.
+     * Decoding doesn't need the JavaFX thread, so it can be done in the background before the panel is created.
+     * @return the background image.
+     */
+    public static synchronized Image loadBackground()
+    {
+        if(londonImage == null)
+            londonImage = new Image(MapPanelController.class.getResourceAsStream("London.jpg"));
+        return londonImage;
+    }
+
     /**
      * Removes the temporary text from before a borough has been selected.
      */
@@ -113,37 +216,167 @@ public class MapPanelController {
 
     /**
      * Updates the heat map based on the selected date range.
+     * This loads the data into memory if it hasn't been already, or queries each borough's deltas if it can't be.
      * @param startDate the start date.
      * @param endDate the end date.
      */
     public void heatMapUpdate(LocalDate startDate, LocalDate endDate){
+        RangeQueryEngine data = CovidDataLoader.getQueryEngine();
+        heatMapUpdate(startDate, endDate, data, data == null ? CovidDataLoader.getBoroughDeltas(startDate, endDate) : null);
+    }
+
+    /**
+     * Updates the heat map from the in-memory data, or from each borough's deltas if there is none.
+     * This does not touch the database, so it is safe to call on the JavaFX thread.
+     * @param startDate the start date.
+     * @param endDate the end date.
+     * @param data the result of CovidDataLoader.getQueryEngine.
+     * @param deltas the result of CovidDataLoader.getBoroughDeltas, used only if data is null.
+     */
+    public void heatMapUpdate(LocalDate startDate, LocalDate endDate, RangeQueryEngine data, Integer[][] deltas){
+        stopPlayback();
         this.startDate = startDate;
         this.endDate = endDate;
-        List<Polygon> polygonList = getPolygonList();
-        Integer maxDeaths = CovidDataLoader.getMaxDeaths(startDate, endDate);
-        for(Polygon p: polygonList){
-            String borough = capitalize(p.getParent().getId().replace("+", " "));
-            Integer deaths = CovidDataLoader.getDeaths(startDate, endDate, borough);
-            if(maxDeaths != null && deaths != null)
+        this.data = data;
+        this.deltas = deltas;
+        recompute();
+    }
+
+    /**
+     * Recomputes the colours for the current date range, metric and scale, and applies them.
+     * Without the in-memory data, only cases and deaths can be shown, from the deltas.
+     */
+    private void recompute(){
+        if(data == null && deltas == null)
+            return;
+        long updateStart = System.nanoTime();
+        if(data != null)
+            heatMap.compute(data, metricBox.getValue(), startDate, endDate);
+        else
+            heatMap.compute(deltas, metricBox.getValue());
+        int recoloured = 0;
+        for(int id = 0; id < BoroughRegistry.COUNT; id++){
+            if(polygons[id] == null)
+                continue;
+            int bucket = heatMap.getBucket(id);
+            // Only polygons whose colour has changed are touched, so only they are redrawn.
+            if(bucket != buckets[id])
             {
-                if (deaths.equals(maxDeaths)){
-                    p.setFill(Color.RED);
-                }else if(deaths>(maxDeaths*0.66)){
-                    Paint darkerOrange = Color.rgb(255, 100, 0);
-                    p.setFill(darkerOrange);
-                }else if (deaths>(maxDeaths*0.33)){
-                    Paint lighterOrange = Color.rgb(255, 200, 0);
-                    p.setFill(lighterOrange);
-                }else{
-                    p.setFill(Color.GREEN);
-                }
+                buckets[id] = bucket;
+                if(id != hovered)
+                    polygons[id].setFill(heatMap.getColour(bucket));
+                recoloured++;
             }
-            else
+        }
+        if(LOGGER.isLoggable(Level.FINE))
+            LOGGER.fine(String.format("Heat map of %s updated in %.1f us, %d boroughs recoloured, range %.1f to %.1f",
+                metricBox.getValue(), (System.nanoTime() - updateStart) / 1e3, recoloured, heatMap.getMin(), heatMap.getMax()));
+    }
+
+    /**
+     * Plays the heat map of the chosen metric forward one day per frame, over all the data.
+     * Every frame's colours are worked out before it starts, so no frame touches the database.
+     */
+    private void startPlayback(){
+        if(data == null)
+            return;
+        long precomputeStart = System.nanoTime();
+        CovidDataSnapshot snapshot = data.getSnapshot();
+        int days = snapshot.getDayCount();
+        LocalDate first = snapshot.getEarliestDate();
+        if(days == 0)
+            return;
+        byte[] frames = heatMap.computeTimeline(data, metricBox.getValue(), first, days, PLAYBACK_WINDOW);
+        String[] labels = new String[days];
+        for(int day = 0; day < days; day++)
+            labels[day] = first.plusDays(day).toString();
+        LOGGER.info(String.format("Time-lapse of %s precomputed in %.1f ms: %d days, range %.1f to %.1f",
+            metricBox.getValue(), (System.nanoTime() - precomputeStart) / 1e6, days, heatMap.getMin(), heatMap.getMax()));
+        playback = new Playback(frames, labels);
+        playButton.setText("Stop");
+        playback.start();
+    }
+
+    /**
+     * Stops the time-lapse, if one is playing, and logs how long its frames took.
+     * The caller recomputes the map, if it should go back to the selected date range.
+     */
+    private void stopPlayback(){
+        if(playback == null)
+            return;
+        playback.stop();
+        playback.logMetrics();
+        playback = null;
+        playButton.setText("Play");
+        dayLabel.setText("");
+    }
+
+    /**
+     * Shows one day of the time-lapse per frame, from the precomputed buckets.
+     * A frame only compares bytes and sets colours and labels that already exist, so it allocates nothing.
+     * If frames are late, the days in between are skipped rather than the time-lapse slowing down.
+     */
+    private class Playback extends AnimationTimer
+    {
+        private final byte[] frames;
+        private final String[] labels;
+        private final int days;
+        private long startTime = -1;
+        private int day = -1;
+        // Frame-time metrics: the work done in each frame, and how many days were skipped.
+        private int frameCount;
+        private int skipped;
+        private long totalNanos;
+        private long maxNanos;
+
+        Playback(byte[] frames, String[] labels)
+        {
+            this.frames = frames;
+            this.labels = labels;
+            days = labels.length;
+        }
+
+        @Override
+        public void handle(long now)
+        {
+            long frameStart = System.nanoTime();
+            if(startTime == -1)
+                startTime = now;
+            int next = (int) ((now - startTime) * PLAYBACK_FPS / 1_000_000_000L);
+            if(next >= days)
+            {
+                stopPlayback();
+                recompute();
+                return;
+            }
+            if(next == day)
+                return;
+            if(day != -1)
+                skipped += next - day - 1;
+            day = next;
+            int offset = day * BoroughRegistry.COUNT;
+            for(int id = 0; id < BoroughRegistry.COUNT; id++)
             {
-                Paint backgroundBlue = Color.rgb(44, 62, 80);
-                p.setFill(backgroundBlue);
+                int bucket = frames[offset + id];
+                if(polygons[id] != null && bucket != buckets[id])
+                {
+                    buckets[id] = bucket;
+                    if(id != hovered)
+                        polygons[id].setFill(heatMap.getColour(bucket));
+                }
             }
-            setupHoverEffect(p);
+            dayLabel.setText(labels[day]);
+            long frameNanos = System.nanoTime() - frameStart;
+            frameCount++;
+            totalNanos += frameNanos;
+            maxNanos = Math.max(maxNanos, frameNanos);
+        }
+
+        void logMetrics()
+        {
+            if(frameCount > 0)
+                LOGGER.info(String.format("Time-lapse stopped after %d frames: %.1f us per frame on average, %.1f us at most, %d days skipped",
+                    frameCount, totalNanos / 1e3 / frameCount, maxNanos / 1e3, skipped));
         }
     }
 
@@ -189,39 +422,34 @@ public class MapPanelController {
     @FXML
     public void handleStackPaneClick(MouseEvent event) {
         StackPane clickedPane = (StackPane) event.getSource();
-        boroughName = clickedPane.getId().replace("+", " ");
+        int borough = BoroughRegistry.getId(clickedPane.getId());
+        if(borough == -1) {
+            System.err.println("No borough for map pane: " + clickedPane.getId());
+            return;
+        }
+        boroughName = BoroughRegistry.getName(borough);
         removeText();
         loadMaps();
         currentBorough.setText("Current Borough: " + boroughName);
-        BoroughWindow bw = new BoroughWindow(startDate, endDate, boroughName);
+        BoroughWindow bw = new BoroughWindow(startDate, endDate, borough);
     }
 
     /**
-     * Makes it so that the StackPane containing a Polygon p change colour when hovered over.
-     * @param p the Polygon.
+     * Makes it so that the StackPane containing a borough's Polygon changes colour when hovered over.
+     * This is done once; the colour restored afterwards is the borough's current one.
+     * @param id the borough's id.
      */
-    @FXML
-    public void setupHoverEffect(Polygon p){
+    private void setupHoverEffect(int id){
+        Polygon p = polygons[id];
         StackPane parent = (StackPane) p.getParent();
-        Color originalColor = (Color) p.getFill();
-        parent.setOnMouseEntered(e -> p.setFill(Color.WHITE)); // Change color on hover
-        parent.setOnMouseExited(e -> p.setFill(originalColor));
-    }
-
-    /**
-     * Capitalizes the first letter of each word in a string.
-     * I'm aware that a method that does this already exists in the Apache Commons library.
-     * I don't want to have to import it though, when the method is so simple.
-     * @param s the string.
-     * @return the capitalized string.
-     */
-    private String capitalize(String s)
-    {
-        for(int i = 0; i < s.length() - 1; i++)
-        {
-            if(s.charAt(i) == ' ')
-                s = s.substring(0, i + 1) + s.substring(i + 1, i + 2).toUpperCase() + s.substring(i + 2);
-        }
-        return s;
+        parent.setOnMouseEntered(e -> { // Change color on hover
+            hovered = id;
+            p.setFill(Color.WHITE);
+        });
+        parent.setOnMouseExited(e -> {
+            hovered = -1;
+            if(buckets[id] != UNSET)
+                p.setFill(heatMap.getColour(buckets[id]));
+        });
     }
 }
@@ -10,8 +10,7 @@ import java.time.LocalDate;
 public class ParksGmrAverage extends Statistic
 { 
     public ParksGmrAverage(LocalDate startDate, LocalDate endDate) {
-        super(startDate, endDate);
-        name = "Percent change in visits to parks";
+        super("Percent change in visits to parks", startDate, endDate);
     }
     
     @Override
@@ -19,4 +18,11 @@ public class ParksGmrAverage extends Statistic
     {
         return CovidDataLoader.getParksGMR(startDate, endDate);
     }
+
+    @Override
+    protected boolean hasSufficientData()
+    {
+        DatasetCatalog catalog = CovidDataLoader.getCatalog();
+        return catalog == null || catalog.hasValues(CovidDataSnapshot.PARKS_GMR, startDate, endDate);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,196 @@
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Answers date range sums and averages in constant time.
+ * For every borough, and for London as a whole, it keeps running totals of
+ * each daily column (the new cases and deaths, and the six GMR columns) along
+ * with running counts of the non-NULL values, so the sum or average over any
+ * range is two array lookups.
+ *
+ * @author Muhammed Keeka
+ * @version 2024-03-25
+ */
+public class RangeQueryEngine
+{
+    // Pass as the borough to query London as a whole.
+    public static final int ALL_BOROUGHS = -1;
+    // The daily columns that are indexed. The cumulative totals are not.
+    private static final int[] INDEXED_COLUMNS = {CovidDataSnapshot.RETAIL_RECREATIONAL_GMR, CovidDataSnapshot.GROCERY_PHARMACY_GMR, CovidDataSnapshot.PARKS_GMR, CovidDataSnapshot.TRANSIT_GMR, CovidDataSnapshot.WORKPLACES_GMR, CovidDataSnapshot.RESIDENTIAL_GMR, CovidDataSnapshot.NEW_CASES, CovidDataSnapshot.NEW_DEATHS};
+
+    private final CovidDataSnapshot snapshot;
+    // sums[column][borough][day + 1] is the total of the column over days 0 to day.
+    // The last borough row holds the totals across all boroughs.
+    private final long[][][] sums;
+    private final int[][][] counts;
+
+    /**
+     * Builds the running totals from a snapshot of the table.
+     * @param snapshot the snapshot to index.
+     */
+    public RangeQueryEngine(CovidDataSnapshot snapshot)
+    {
+        this.snapshot = snapshot;
+        int boroughs = snapshot.getBoroughCount();
+        int days = snapshot.getDayCount();
+        sums = new long[CovidDataSnapshot.COLUMN_COUNT][][];
+        counts = new int[CovidDataSnapshot.COLUMN_COUNT][][];
+        for(int column : INDEXED_COLUMNS)
+        {
+            sums[column] = new long[boroughs + 1][days + 1];
+            counts[column] = new int[boroughs + 1][days + 1];
+            accumulate(column, 0);
+        }
+    }
+
+    /**
+     * Extends the running totals of another engine to the days appended to its snapshot.
+     */
+    private RangeQueryEngine(CovidDataSnapshot snapshot, RangeQueryEngine previous)
+    {
+        this.snapshot = snapshot;
+        int days = snapshot.getDayCount();
+        sums = new long[CovidDataSnapshot.COLUMN_COUNT][][];
+        counts = new int[CovidDataSnapshot.COLUMN_COUNT][][];
+        for(int column : INDEXED_COLUMNS)
+        {
+            sums[column] = new long[previous.sums[column].length][];
+            counts[column] = new int[previous.counts[column].length][];
+            for(int row = 0; row < sums[column].length; row++)
+            {
+                sums[column][row] = Arrays.copyOf(previous.sums[column][row], days + 1);
+                counts[column][row] = Arrays.copyOf(previous.counts[column][row], days + 1);
+            }
+            accumulate(column, previous.snapshot.getDayCount());
+        }
+    }
+
+    /**
+     * Returns an engine for a snapshot made by appending days to this engine's snapshot.
+     * The running totals up to the old last day are the same, so only the new days are added up.
+     * This engine isn't changed.
+     * @param appended the snapshot returned by CovidDataSnapshot.append.
+     * @return the new engine.
+     */
+    public RangeQueryEngine append(CovidDataSnapshot appended)
+    {
+        if(snapshot.getDayCount() == 0 || appended.getFirstDay() != snapshot.getFirstDay() || appended.getDayCount() < snapshot.getDayCount())
+            return new RangeQueryEngine(appended);
+        return new RangeQueryEngine(appended, this);
+    }
+
+    /**
+     * Works out the running totals of the column from a day index to the end of the snapshot.
+     */
+    private void accumulate(int column, int fromDay)
+    {
+        int boroughs = snapshot.getBoroughCount();
+        long[][] columnSums = sums[column];
+        int[][] columnCounts = counts[column];
+        for(int day = fromDay; day < snapshot.getDayCount(); day++)
+        {
+            long daySum = 0;
+            int dayCount = 0;
+            for(int b = 0; b < boroughs; b++)
+            {
+                columnSums[b][day + 1] = columnSums[b][day];
+                columnCounts[b][day + 1] = columnCounts[b][day];
+                if(snapshot.hasValue(column, b, day))
+                {
+                    int value = snapshot.getValue(column, b, day);
+                    columnSums[b][day + 1] += value;
+                    columnCounts[b][day + 1]++;
+                    daySum += value;
+                    dayCount++;
+                }
+            }
+            columnSums[boroughs][day + 1] = columnSums[boroughs][day] + daySum;
+            columnCounts[boroughs][day + 1] = columnCounts[boroughs][day] + dayCount;
+        }
+    }
+
+    /**
+     * @return the snapshot this engine was built from.
+     */
+    public CovidDataSnapshot getSnapshot()
+    {
+        return snapshot;
+    }
+
+    /**
+     * @return the total of the non-NULL values of the column in the date range.
+     */
+    public long getSum(int column, int borough, LocalDate start, LocalDate end)
+    {
+        int from = from(start);
+        int to = to(end);
+        if(to <= from)
+            return 0;
+        return sums[column][row(borough)][to] - sums[column][row(borough)][from];
+    }
+
+    /**
+     * @return the number of non-NULL values of the column in the date range.
+     */
+    public int getCount(int column, int borough, LocalDate start, LocalDate end)
+    {
+        int from = from(start);
+        int to = to(end);
+        if(to <= from)
+            return 0;
+        return counts[column][row(borough)][to] - counts[column][row(borough)][from];
+    }
+
+    /**
+     * Equivalent to SELECT SUM(column) FROM CovidData WHERE Date BETWEEN start AND end.
+     * @param borough the borough's index in the snapshot, or ALL_BOROUGHS.
+     * @return the sum, or null if there are no values in the range.
+     */
+    public Integer getRangeSum(int column, int borough, LocalDate start, LocalDate end)
+    {
+        if(getCount(column, borough, start, end) == 0)
+            return null;
+        return (int) getSum(column, borough, start, end);
+    }
+
+    /**
+     * Equivalent to SELECT AVG(column) FROM CovidData WHERE Date BETWEEN start AND end,
+     * truncated to an Integer as CovidDataLoader does.
+     * @param borough the borough's index in the snapshot, or ALL_BOROUGHS.
+     * @return the average, or null if there are no values in the range.
+     */
+    public Integer getAverage(int column, int borough, LocalDate start, LocalDate end)
+    {
+        int count = getCount(column, borough, start, end);
+        if(count == 0)
+            return null;
+        return (int) ((double) getSum(column, borough, start, end) / count);
+    }
+
+    /**
+     * @return the London-wide average of the column in the date range, or null if there are no values.
+     */
+    public Integer getAverage(int column, LocalDate start, LocalDate end)
+    {
+        return getAverage(column, ALL_BOROUGHS, start, end);
+    }
+
+    private int row(int borough)
+    {
+        return borough == ALL_BOROUGHS ? snapshot.getBoroughCount() : borough;
+    }
+
+    // The prefix index just before start, clamped to the snapshot.
+    private int from(LocalDate start)
+    {
+        long day = start.toEpochDay() - snapshot.getFirstDay();
+        return (int) Math.max(0, Math.min(snapshot.getDayCount(), day));
+    }
+
+    // The prefix index just after end, clamped to the snapshot.
+    private int to(LocalDate end)
+    {
+        long day = end.toEpochDay() - snapshot.getFirstDay() + 1;
+        return (int) Math.max(0, Math.min(snapshot.getDayCount(), day));
+    }
+}
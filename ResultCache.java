@@ -0,0 +1,162 @@
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * A bounded cache of query results, shared by the statistics, the heat map and the graphs.
+ * Results are keyed by what was computed and the date range (and borough, if any) it was
+ * computed for, so going back to a date range that has already been viewed needs no queries.
+ * When the cache is full the least recently used result is evicted.
+ * Cached results are shared, so they must not be modified.
+ *
+ * @author Muhammed Keeka
+ * @version 2024-03-25
+ */
+public class ResultCache
+{
+    private static final int CAPACITY = 256;
+    private static final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest)
+        {
+            if(size() > CAPACITY)
+            {
+                evictions++;
+                return true;
+            }
+            return false;
+        }
+    };
+    private static long hits = 0;
+    private static long misses = 0;
+    private static long evictions = 0;
+    // Incremented whenever results are invalidated, so that results computed from the old data aren't cached.
+    private static long generation = 0;
+
+    /**
+     * A result, with the last date it depends on.
+     */
+    private static class Entry
+    {
+        private final Object result;
+        private final LocalDate end;
+
+        Entry(Object result, LocalDate end)
+        {
+            this.result = result;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Returns the cached result, computing and caching it first if necessary.
+     * The computation runs outside the cache's lock, so slow queries don't hold up other threads.
+     * @param kind what is being computed, e.g. a Statistic's class name.
+     * @param start the start date.
+     * @param end the end date.
+     * @param borough the borough, or null if the result covers all of London.
+     * @param compute computes the result. It may return null, which is cached too.
+     * @return the result.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T get(String kind, LocalDate start, LocalDate end, String borough, Supplier<T> compute)
+    {
+        String key = key(kind, start, end, borough);
+        long computedFrom;
+        synchronized(entries)
+        {
+            Entry entry = entries.get(key);
+            if(entry != null)
+            {
+                hits++;
+                return (T) entry.result;
+            }
+            misses++;
+            computedFrom = generation;
+        }
+        T result = compute.get();
+        synchronized(entries)
+        {
+            if(computedFrom == generation)
+                entries.put(key, new Entry(result, end));
+        }
+        return result;
+    }
+
+    /**
+     * @return whether a result is cached, without affecting the counters or the eviction order.
+     */
+    public static boolean contains(String kind, LocalDate start, LocalDate end, String borough)
+    {
+        synchronized(entries)
+        {
+            return entries.containsKey(key(kind, start, end, borough));
+        }
+    }
+
+    /**
+     * Empties the cache, e.g. after the data has changed.
+     */
+    public static void clear()
+    {
+        synchronized(entries)
+        {
+            entries.clear();
+            generation++;
+        }
+    }
+
+    /**
+     * Removes the results for date ranges that end on or after a date, e.g. after days have been
+     * added from that date on. Results for earlier date ranges don't depend on those days, so they are kept.
+     * @return the number of results removed.
+     */
+    public static int invalidateFrom(LocalDate date)
+    {
+        synchronized(entries)
+        {
+            int size = entries.size();
+            entries.values().removeIf(entry -> entry.end == null || !entry.end.isBefore(date));
+            generation++;
+            return size - entries.size();
+        }
+    }
+
+    private static String key(String kind, LocalDate start, LocalDate end, String borough)
+    {
+        return kind + "|" + start + "|" + end + "|" + borough;
+    }
+
+    public static long getHits()
+    {
+        synchronized(entries)
+        {
+            return hits;
+        }
+    }
+
+    public static long getMisses()
+    {
+        synchronized(entries)
+        {
+            return misses;
+        }
+    }
+
+    public static long getEvictions()
+    {
+        synchronized(entries)
+        {
+            return evictions;
+        }
+    }
+
+    public static int getSize()
+    {
+        synchronized(entries)
+        {
+            return entries.size();
+        }
+    }
+}
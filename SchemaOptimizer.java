@@ -0,0 +1,124 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Makes sure the CovidData table has the indexes the loader's queries need.
+ * The indexes are created only if they are missing, so this is safe to run at every startup.
+ * Afterwards the query plan of every loader query is logged, with a warning for any
+ * query that still scans the whole table.
+ *
+ * @author Muhammed Keeka
+ * @version 2024-03-25
+ */
+public class SchemaOptimizer
+{
+    private static final Logger LOGGER = Logger.getLogger(SchemaOptimizer.class.getName());
+
+    // Serves the per-date sums, the date range averages and GROUP BY `Date` without touching the table.
+    // The other GMR columns aren't in it, so the queries that read them, the per-day sums and series of those columns
+    // and getBoroughData, find their rows through an index and then look each one up in the table.
+    // Covering them too would copy nearly the whole table into the index.
+    static final String DATE_BOROUGH_INDEX = "CREATE INDEX IF NOT EXISTS CovidData_Date_Borough ON CovidData(`Date`, Borough, TotalCases, TotalDeaths, NewCases, NewDeaths, ParksGMR, TransitGMR);";
+    // Serves the per-borough lookups and the Borough self-joins.
+    static final String BOROUGH_DATE_INDEX = "CREATE INDEX IF NOT EXISTS CovidData_Borough_Date ON CovidData(Borough, `Date`, TotalCases, TotalDeaths);";
+    // The value bound to every parameter when explaining a query. The plan doesn't depend on it.
+    private static final String SAMPLE_PARAMETER = "2022-01-01";
+
+    /**
+     * Creates any missing indexes, refreshes the planner's statistics if any were missing and logs the query plans.
+     * Nothing is written when the indexes are already there, so the database file is left untouched
+     * and the DatasetCatalog saved beside it stays valid.
+     * @param conn a writable connection in auto-commit mode.
+     */
+    public static void optimize(Connection conn) throws SQLException
+    {
+        boolean missing = !hasIndex(conn, "CovidData_Date_Borough") || !hasIndex(conn, "CovidData_Borough_Date");
+        if(missing)
+        {
+            Statement stmt = conn.createStatement();
+            stmt.executeUpdate(DATE_BOROUGH_INDEX);
+            stmt.executeUpdate(BOROUGH_DATE_INDEX);
+            stmt.executeUpdate("ANALYZE;");
+            stmt.close();
+        }
+        logQueryPlans(conn);
+    }
+
+    /**
+     * @return whether the database has an index with the name.
+     */
+    private static boolean hasIndex(Connection conn, String name) throws SQLException
+    {
+        PreparedStatement stmt = conn.prepareStatement("SELECT 1 FROM sqlite_master WHERE type = 'index' AND name = ?;");
+        stmt.setString(1, name);
+        ResultSet rs = stmt.executeQuery();
+        boolean found = rs.next();
+        rs.close();
+        stmt.close();
+        return found;
+    }
+
+    /**
+     * Logs the plan SQLite chooses for each of the loader's queries.
+     * @param conn a connection to the database.
+     */
+    public static void logQueryPlans(Connection conn) throws SQLException
+    {
+        List<String> queries = new ArrayList<>(Arrays.asList(CovidDataLoader.TOTAL_CASES_ON_DATE, CovidDataLoader.BOROUGH_TOTAL_CASES_ON_DATE,
+            CovidDataLoader.MAX_CASES, CovidDataLoader.TOTAL_DEATHS_ON_DATE, CovidDataLoader.BOROUGH_TOTAL_DEATHS_ON_DATE, CovidDataLoader.MAX_DEATHS,
+            CovidDataLoader.BOROUGH_DELTAS, CovidDataLoader.PARKS_AVERAGE, CovidDataLoader.TRANSIT_AVERAGE,
+            CovidDataLoader.CASES_PER_DAY, CovidDataLoader.DEATHS_PER_DAY, CovidDataLoader.BOROUGH_DATA + "`Date`;"));
+        queries.addAll(Arrays.asList(CovidDataLoader.SUM_PER_DAY));
+        for(SeriesRequest request : sampleSeriesRequests())
+            queries.add(CovidDataLoader.seriesQuery(request, CovidDataLoader.seriesColumns(request), new ArrayList<>()));
+        queries.add(String.format(CovidDataLoader.LAST_TOTALS, "TotalCases", "NewCases"));
+        queries.add(String.format(CovidDataLoader.LAST_TOTALS, "TotalDeaths", "NewDeaths"));
+        for(String query : queries)
+        {
+            PreparedStatement stmt = conn.prepareStatement("EXPLAIN QUERY PLAN " + query);
+            for(int i = 1; i <= stmt.getParameterMetaData().getParameterCount(); i++)
+                stmt.setString(i, SAMPLE_PARAMETER);
+            ResultSet rs = stmt.executeQuery();
+            StringBuilder plan = new StringBuilder();
+            boolean fullScan = false;
+            while(rs.next())
+            {
+                String detail = rs.getString("detail");
+                plan.append("\n    ").append(detail);
+                // A SCAN is only a problem when it reads the table itself rather than a covering index.
+                if(detail.startsWith("SCAN") && !detail.contains("COVERING INDEX"))
+                    fullScan = true;
+            }
+            rs.close();
+            stmt.close();
+            LOGGER.log(fullScan ? Level.WARNING : Level.INFO, (fullScan ? "Full table scan in " : "Query plan for ") + query + plan);
+        }
+    }
+
+    /**
+     * @return requests whose getSeries queries between them take every form the query can: the graphs'
+     * London series together with two boroughs', and a borough's series of GMR columns the indexes don't cover.
+     */
+    private static SeriesRequest[] sampleSeriesRequests()
+    {
+        LocalDate date = LocalDate.parse(SAMPLE_PARAMETER);
+        SeriesRequest graphs = new SeriesRequest(date, date);
+        graphs.add(SeriesRequest.ALL_BOROUGHS, CovidDataSnapshot.NEW_CASES, 1);
+        graphs.add(SeriesRequest.ALL_BOROUGHS, CovidDataSnapshot.NEW_DEATHS, 1);
+        graphs.add(BoroughRegistry.getId("Sutton"), CovidDataSnapshot.NEW_CASES, 7);
+        graphs.add(BoroughRegistry.getId("Camden"), CovidDataSnapshot.NEW_CASES, 7);
+        SeriesRequest mobility = new SeriesRequest(date, date);
+        mobility.add(BoroughRegistry.getId("Sutton"), CovidDataSnapshot.RETAIL_RECREATIONAL_GMR, 1);
+        mobility.add(BoroughRegistry.getId("Sutton"), CovidDataSnapshot.RESIDENTIAL_GMR, 1);
+        return new SeriesRequest[] {graphs, mobility};
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * Reduces a long series to the number of points a chart can actually show, using the
+ * Largest-Triangle-Three-Buckets algorithm. The first and last points are always kept. The
+ * points in between are split into equal buckets, and from each bucket the point kept is the one
+ * forming the largest triangle with the point kept before it and the average of the next bucket.
+ * Peaks and troughs survive, so the shape of the line stays the same even with a fraction of
+ * the points.
+ *
+ * @author Muhammed Keeka
+ * @version 2024-03-25
+ */
+public class SeriesDownsampler
+{
+    private SeriesDownsampler()
+    {
+    }
+
+    /**
+     * @param x the x values, in increasing order.
+     * @param y the y values.
+     * @param length the number of points in the arrays to use.
+     * @param threshold the number of points wanted.
+     * @return the indexes of the points kept, in increasing order. If the series already
+     * has no more than threshold points, or threshold is less than 3, every point is kept.
+     */
+    public static int[] largestTriangleThreeBuckets(double[] x, double[] y, int length, int threshold)
+    {
+        if(threshold >= length || threshold < 3)
+        {
+            int[] all = new int[length];
+            for(int i = 0; i < length; i++)
+                all[i] = i;
+            return all;
+        }
+        int[] kept = new int[threshold];
+        // The first and last points are buckets of their own.
+        double bucketSize = (double) (length - 2) / (threshold - 2);
+        int previous = 0;
+        kept[0] = 0;
+        for(int bucket = 0; bucket < threshold - 2; bucket++)
+        {
+            // The average of the next bucket is the triangle's third corner.
+            int nextStart = (int) ((bucket + 1) * bucketSize) + 1;
+            int nextEnd = Math.min((int) ((bucket + 2) * bucketSize) + 1, length);
+            double averageX = 0;
+            double averageY = 0;
+            for(int i = nextStart; i < nextEnd; i++)
+            {
+                averageX += x[i];
+                averageY += y[i];
+            }
+            averageX /= nextEnd - nextStart;
+            averageY /= nextEnd - nextStart;
+
+            int start = (int) (bucket * bucketSize) + 1;
+            int end = (int) ((bucket + 1) * bucketSize) + 1;
+            double largestArea = -1;
+            int chosen = start;
+            for(int i = start; i < end; i++)
+            {
+                // Twice the triangle's area, which is enough to compare them.
+                double area = Math.abs((x[previous] - averageX) * (y[i] - y[previous])
+                    - (x[previous] - x[i]) * (averageY - y[previous]));
+                if(area > largestArea)
+                {
+                    largestArea = area;
+                    chosen = i;
+                }
+            }
+            kept[bucket + 1] = chosen;
+            previous = chosen;
+        }
+        kept[threshold - 1] = length - 1;
+        return kept;
+    }
+}
@@ -0,0 +1,241 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A set of per-day series to fetch together: each one is a column of one borough, or of all
+ * of London, over the same date range, optionally as a rolling average. CovidDataLoader.getSeries
+ * answers all of them from a single pass over the rows in date order, rather than with a query each.
+ * A request should not be changed once it has been passed to getSeries; forRange copies it instead.
+ *
+ * @author Muhammed Keeka
+ * @version 2024-03-25
+ */
+public class SeriesRequest
+{
+    // In place of a borough id, the series covers the whole of London.
+    public static final int ALL_BOROUGHS = -1;
+
+    private final LocalDate start;
+    private final LocalDate end;
+    private final List<Line> lines = new ArrayList<>();
+
+    private static class Line
+    {
+        private final int borough;
+        private final int column;
+        private final int window;
+
+        Line(int borough, int column, int window)
+        {
+            this.borough = borough;
+            this.column = column;
+            this.window = window;
+        }
+    }
+
+    public SeriesRequest(LocalDate start, LocalDate end)
+    {
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * @return a request for the same series over another date range.
+     */
+    public SeriesRequest forRange(LocalDate start, LocalDate end)
+    {
+        SeriesRequest request = new SeriesRequest(start, end);
+        request.lines.addAll(lines);
+        return request;
+    }
+
+    /**
+     * Adds a series to the request.
+     * Across all of London, the counts are summed and the mobility reports (GMRs) are averaged.
+     * @param borough the borough's BoroughRegistry id, or ALL_BOROUGHS.
+     * @param column one of the CovidDataSnapshot column constants.
+     * @param window the number of days in the rolling average, or 1 for the daily values.
+     * @return the index of the series in the result of CovidDataLoader.getSeries.
+     */
+    public int add(int borough, int column, int window)
+    {
+        if(borough != ALL_BOROUGHS && !BoroughRegistry.isValid(borough))
+            throw new IllegalArgumentException("Unknown borough id: " + borough);
+        if(column < 0 || column >= CovidDataSnapshot.COLUMN_COUNT)
+            throw new IllegalArgumentException("Unknown column: " + column);
+        if(window < 1)
+            throw new IllegalArgumentException("The window must be at least one day: " + window);
+        lines.add(new Line(borough, column, window));
+        return lines.size() - 1;
+    }
+
+    public LocalDate getStart()
+    {
+        return start;
+    }
+
+    public LocalDate getEnd()
+    {
+        return end;
+    }
+
+    /**
+     * @return the number of series requested.
+     */
+    public int size()
+    {
+        return lines.size();
+    }
+
+    public int getBorough(int index)
+    {
+        return lines.get(index).borough;
+    }
+
+    public int getColumn(int index)
+    {
+        return lines.get(index).column;
+    }
+
+    public int getWindow(int index)
+    {
+        return lines.get(index).window;
+    }
+
+    /**
+     * @return whether any of the series needs the column.
+     */
+    public boolean usesColumn(int column)
+    {
+        for(Line line : lines)
+        {
+            if(line.column == column)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return whether any of the series is of the borough, or of all of London if borough is ALL_BOROUGHS.
+     */
+    public boolean usesBorough(int borough)
+    {
+        for(Line line : lines)
+        {
+            if(line.borough == borough)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return a name for the series, e.g. "Sutton: NewCases (7-day average)".
+     */
+    public String getLabel(int index)
+    {
+        Line line = lines.get(index);
+        String label = (line.borough == ALL_BOROUGHS ? "London" : BoroughRegistry.getName(line.borough))
+            + ": " + CovidDataSnapshot.COLUMN_NAMES[line.column];
+        if(line.window > 1)
+            label += " (" + line.window + "-day average)";
+        return label;
+    }
+
+    /**
+     * @return the labels of the series, which identify the request apart from its date range.
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder labels = new StringBuilder("SeriesRequest[");
+        for(int i = 0; i < lines.size(); i++)
+            labels.append(i == 0 ? "" : ", ").append(getLabel(i));
+        return labels.append("]").toString();
+    }
+
+    /**
+     * Collects the cells of the rows, passed in date order, into the requested series.
+     */
+    Accumulator newAccumulator()
+    {
+        return new Accumulator();
+    }
+
+    /**
+     * Keeps a running total of each series for the current day, and adds it to the series
+     * once the rows move on to the next day.
+     */
+    class Accumulator
+    {
+        private final DailySeries.Builder[] builders = new DailySeries.Builder[lines.size()];
+        private final long[] sums = new long[lines.size()];
+        private final int[] counts = new int[lines.size()];
+        private long day;
+        private boolean started = false;
+
+        Accumulator()
+        {
+            for(int i = 0; i < builders.length; i++)
+                builders[i] = new DailySeries.Builder();
+        }
+
+        /**
+         * Adds one or more values of a column, which aren't NULL, to the series of the borough.
+         * Only the series of exactly that borough are affected, so the values of a borough are
+         * added to those of all of London by adding them again with ALL_BOROUGHS.
+         * Values must be added in date order.
+         * @param borough a BoroughRegistry id, or ALL_BOROUGHS.
+         * @param sum the sum of the values.
+         * @param count the number of values.
+         */
+        void add(long epochDay, int borough, int column, long sum, int count)
+        {
+            if(started && epochDay != day)
+                flush();
+            day = epochDay;
+            started = true;
+            for(int i = 0; i < sums.length; i++)
+            {
+                Line line = lines.get(i);
+                if(line.column == column && line.borough == borough)
+                {
+                    sums[i] += sum;
+                    counts[i] += count;
+                }
+            }
+        }
+
+        private void flush()
+        {
+            for(int i = 0; i < sums.length; i++)
+            {
+                if(counts[i] > 0)
+                {
+                    boolean average = lines.get(i).column <= CovidDataSnapshot.RESIDENTIAL_GMR;
+                    builders[i].accept(day, average ? (int) Math.round((double) sums[i] / counts[i]) : (int) sums[i]);
+                }
+                sums[i] = 0;
+                counts[i] = 0;
+            }
+        }
+
+        /**
+         * @return the series, in the order they were requested.
+         */
+        DailySeries[] finish()
+        {
+            if(started)
+                flush();
+            DailySeries[] series = new DailySeries[builders.length];
+            for(int i = 0; i < series.length; i++)
+            {
+                series[i] = builders[i].build();
+                int window = lines.get(i).window;
+                if(window > 1)
+                    series[i] = series[i].rollingAverage(window);
+            }
+            return series;
+        }
+    }
+}
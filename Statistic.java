@@ -10,19 +10,21 @@ public abstract class Statistic
 {
     protected String name; //name of the statistic
     protected Integer data; //data to be displayed
+    private volatile boolean calculated; //whether data has been calculated yet
     protected LocalDate startDate;
     protected LocalDate endDate;
 
     /**
-     * Constructor for the Statistic class
+     * Constructor for the Statistic class.
+     * Nothing is calculated until the data is first asked for.
+     * @param name the name of the statistic
      * @param startDate the start date of the statistic
      * @param endDate the end date of the statistic
      */
-    public Statistic(LocalDate startDate, LocalDate endDate) {
+    public Statistic(String name, LocalDate startDate, LocalDate endDate) {
+        this.name = name;
         this.startDate = startDate;
         this.endDate = endDate;
-        name = "";
-        data = calculateStatistic();
     }
 
     /**
@@ -34,12 +36,37 @@ public abstract class Statistic
     }
 
     /**
-     * Returns the data of the statistic
-     * @return the data of the statistic as an Integer
+     * Returns the data of the statistic, calculating it on the first call.
+     * Statistics that have already been calculated for this date range come from the cache.
+     * @return the data of the statistic as an Integer, or null if there isn't enough data
      */
-    public Integer getData() {
+    public synchronized Integer getData() {
+        if(!calculated) {
+            if(hasSufficientData())
+                data = ResultCache.get(getClass().getName(), startDate, endDate, null, this::calculateStatistic);
+            else
+                data = null;
+            calculated = true;
+        }
         return data;
     }
+
+    /**
+     * Not synchronized, so it never waits for a calculation running on another thread.
+     * @return whether getData() will return without calculating anything
+     */
+    public boolean isCalculated() {
+        return calculated || !hasSufficientData() || ResultCache.contains(getClass().getName(), startDate, endDate, null);
+    }
+
+    /**
+     * Checks the dataset's catalog, without querying anything, for whether the statistic could
+     * have a value over the date range. If not, it is null without being calculated.
+     * @return false if there certainly isn't enough data to calculate the statistic
+     */
+    protected boolean hasSufficientData() {
+        return true;
+    }
     
     /**
      * Calculates the statistic from the data in the database
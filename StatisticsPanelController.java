@@ -1,5 +1,6 @@
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
+import javafx.application.Platform;
 import javafx.scene.text.Text;
 import java.net.URL;
 import javafx.scene.layout.Pane;
@@ -87,14 +88,49 @@ public class StatisticsPanelController {
     }
     
     /**
-     * Displays the current statistic
+     * Displays the current statistic.
+     * If it hasn't been calculated yet, it is calculated in the background and shown when ready.
+     * The statistics either side of it are then calculated in the background too, ready for
+     * nextStatistic and previousStatistic.
      */
     private void displayCurrentStatistic()
     {
-        statistic.setText(statistics.get(currentStatisticIndex).getName());
-        if(statistics.get(currentStatisticIndex).getData() == null)
+        Statistic current = statistics.get(currentStatisticIndex);
+        statistic.setText(current.getName());
+        if(current.isCalculated())
+        {
+            displayData(current);
+        }
+        else
+        {
+            data.setText("Calculating...");
+            AsyncCovidDataLoader.supply(current::getData).thenRun(() -> Platform.runLater(() -> {
+                // Only show it if the user hasn't moved on to another statistic or date range.
+                if(statistics.get(currentStatisticIndex) == current)
+                    displayData(current);
+            }));
+        }
+        prefetch(statistics.get((currentStatisticIndex + 1) % statistics.size()));
+        prefetch(statistics.get((currentStatisticIndex + statistics.size() - 1) % statistics.size()));
+    }
+
+    /**
+     * Displays the data of a statistic that has been calculated.
+     */
+    private void displayData(Statistic current)
+    {
+        if(current.getData() == null)
             data.setText("Sufficient data to calculate this statistic is unavailable over the selected period");
         else
-            data.setText("" + statistics.get(currentStatisticIndex).getData());
+            data.setText("" + current.getData());
+    }
+
+    /**
+     * Calculates a statistic in the background, if it hasn't been already.
+     */
+    private void prefetch(Statistic adjacent)
+    {
+        if(!adjacent.isCalculated())
+            AsyncCovidDataLoader.supply(adjacent::getData);
     }
 }
\ No newline at end of file
@@ -10,8 +10,7 @@ import java.time.LocalDate;
 public class TotalCasesPerBorough extends Statistic
 { 
     public TotalCasesPerBorough(LocalDate startDate, LocalDate endDate) {
-        super(startDate, endDate);
-        name = "Average cases per borough";
+        super("Average cases per borough", startDate, endDate);
     }
     
     @Override
@@ -22,4 +21,11 @@ public class TotalCasesPerBorough extends Statistic
             cases = cases/33;
         return cases;
     }
-}
+
+    @Override
+    protected boolean hasSufficientData()
+    {
+        DatasetCatalog catalog = CovidDataLoader.getCatalog();
+        return catalog == null || catalog.covers(CovidDataSnapshot.TOTAL_CASES, startDate.minusDays(1), endDate);
+    }
+}
\ No newline at end of file
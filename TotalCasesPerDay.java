@@ -10,8 +10,7 @@ import java.time.LocalDate;
 public class TotalCasesPerDay extends Statistic
 {
     public TotalCasesPerDay(LocalDate startDate, LocalDate endDate) {
-        super(startDate, endDate);
-        name = "Average cases per day";
+        super("Average cases per day", startDate, endDate);
     }
     
     @Override
@@ -22,4 +21,11 @@ public class TotalCasesPerDay extends Statistic
             cases = cases/(startDate.until(endDate).getDays()+1);
         return cases;
     }
-}
+
+    @Override
+    protected boolean hasSufficientData()
+    {
+        DatasetCatalog catalog = CovidDataLoader.getCatalog();
+        return catalog == null || catalog.covers(CovidDataSnapshot.TOTAL_CASES, startDate.minusDays(1), endDate);
+    }
+}
\ No newline at end of file
@@ -9,8 +9,7 @@ import java.time.LocalDate;
 public class TotalDeaths extends Statistic
 { 
     public TotalDeaths(LocalDate startDate, LocalDate endDate) {
-        super(startDate, endDate);
-        name = "Total Deaths across all London boroughs";
+        super("Total Deaths across all London boroughs", startDate, endDate);
     }
     
     @Override
@@ -18,4 +17,11 @@ public class TotalDeaths extends Statistic
     {
         return CovidDataLoader.getDeaths(startDate, endDate);
     }
+
+    @Override
+    protected boolean hasSufficientData()
+    {
+        DatasetCatalog catalog = CovidDataLoader.getCatalog();
+        return catalog == null || catalog.covers(CovidDataSnapshot.TOTAL_DEATHS, startDate.minusDays(1), endDate);
+    }
 }
\ No newline at end of file
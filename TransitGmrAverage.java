@@ -10,8 +10,7 @@ import java.time.LocalDate;
 public class TransitGmrAverage extends Statistic
 { 
     public TransitGmrAverage(LocalDate startDate, LocalDate endDate) {
-        super(startDate, endDate);
-        name = "Percent change in visits to public transport hubs";
+        super("Percent change in visits to public transport hubs", startDate, endDate);
     }
     
     @Override
@@ -19,4 +18,11 @@ public class TransitGmrAverage extends Statistic
     {
         return CovidDataLoader.getTransitGMR(startDate, endDate);
     }
+
+    @Override
+    protected boolean hasSufficientData()
+    {
+        DatasetCatalog catalog = CovidDataLoader.getCatalog();
+        return catalog == null || catalog.hasValues(CovidDataSnapshot.TRANSIT_GMR, startDate, endDate);
+    }
 }
\ No newline at end of file
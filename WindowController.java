@@ -8,6 +8,7 @@ import javafx.application.Application;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
 import java.net.URL;
+import java.nio.file.Paths;
 import javafx.scene.layout.Pane;
 import javafx.scene.control.DatePicker;
 import javafx.util.Callback;
@@ -16,6 +17,17 @@ import java.time.format.DateTimeFormatter;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.Button;
+import javafx.application.Platform;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * This is the controller class for the main window.
@@ -44,9 +56,19 @@ public class WindowController extends Application
     private DatePicker startDate;
     @FXML
     private DatePicker endDate;
-    // The first and last date in the dataset, used for restricting the date range.
-    private final LocalDate FIRST_DATE = LocalDate.of(2020, 2, 3);
-    private final LocalDate LAST_DATE = LocalDate.of(2023, 2, 9);
+    // The first and last date in the dataset, from its catalog, used for restricting the date range.
+    private LocalDate firstDate;
+    private LocalDate lastDate;
+    // Run with -Dcovid.synchronous=true to query on the JavaFX thread, as before, for comparison.
+    private static final boolean SYNCHRONOUS_UPDATES = Boolean.getBoolean("covid.synchronous");
+    private static final Logger LOGGER = Logger.getLogger(WindowController.class.getName());
+    // Incremented for every valid date range, so results for an older range can be recognised and dropped.
+    private int dateRangeVersion;
+    // The background queries for the current date range.
+    private List<CompletableFuture<?>> pendingQueries = new ArrayList<>();
+    // How long each phase of starting up took, and when starting up began.
+    private final Map<String, Long> startupTimes = Collections.synchronizedMap(new LinkedHashMap<>());
+    private long startupStart;
     
     /**
      * The start method is the main entry point for every JavaFX application. 
@@ -58,6 +80,7 @@ public class WindowController extends Application
     @Override
     public void start(Stage stage)
     {                
+        startupStart = System.nanoTime();
         panels = new ArrayList<>();
         
         URL url = getClass().getResource("Window.fxml");
@@ -78,32 +101,139 @@ public class WindowController extends Application
         backButton.setDisable(true);
         nextButton.setDisable(true);
 
-        // Load the panels.
-        wpc = new WelcomePanelController();
-        Pane welcomePanel = wpc.getPane();
-        panels.add(welcomePanel);
-        
-        mpc = new MapPanelController();
-        Pane mapPanel = mpc.getPane();
-        panels.add(mapPanel);
-        
-        spc = new StatisticsPanelController();
-        Pane statsPanel = spc.getPane();
-        panels.add(statsPanel);
-        
-        gp = new GraphPanelController();
-        Pane graphPane = gp.getPane();
-        panels.add(graphPane);
+        // Only the welcome panel is loaded before the window is shown.
+        timePhase("Welcome panel", () -> wpc = new WelcomePanelController());
+        panels.add(wpc.getPane());
         
         // Set the current panel to the welcome panel.
         currentPanel = 0;
         root.setCenter(panels.get(currentPanel));
 
+        // A date range can't be chosen until the other panels are ready to show it.
+        startDate.setDisable(true);
+        endDate.setDisable(true);
+        wpc.setDateStatus("Loading data...");
+
         // JavaFX must have a Scene (window content) inside a Stage (window).
         Scene scene = new Scene(root);
         stage.setTitle("London COVID-19 Statistics");
         stage.setScene(scene);
         stage.show();
+        startupTimes.put("Window shown", System.nanoTime() - startupStart);
+
+        loadInBackground();
+    }
+
+    /**
+     * Opens the database, loads the data into memory and creates the other panels, all at the same time
+     * and off the JavaFX thread where possible. The map panel has a WebView, which can only be created on
+     * the JavaFX thread, so only its background image is decoded beforehand.
+     */
+    private void loadInBackground()
+    {
+        CompletableFuture<Void> data = runPhase("JDBC driver", CovidDataLoader::loadDriver)
+            .thenRun(() -> timePhase("Database connection and indexes", CovidDataLoader::open))
+            .thenRun(() -> timePhase("Dataset catalog", CovidDataLoader::getCatalog))
+            .thenRun(() -> timePhase("In-memory data", () -> {
+                CovidDataLoader.getQueryEngine();
+                // Run with -Dcovid.snapshot=true to answer queries from memory rather than the database.
+                CovidDataLoader.setSnapshotMode(Boolean.getBoolean("covid.snapshot"));
+            }));
+        CompletableFuture<Void> statistics = runPhase("Statistics panel", () -> spc = new StatisticsPanelController());
+        CompletableFuture<Void> graphs = runPhase("Graph panel", () -> gp = new GraphPanelController());
+        CompletableFuture<Void> map = runPhase("Map background", MapPanelController::loadBackground)
+            .thenRunAsync(() -> timePhase("Map panel", () -> mpc = new MapPanelController()), Platform::runLater);
+        CompletableFuture.allOf(data, statistics, graphs, map)
+            .whenComplete((result, e) -> Platform.runLater(() -> finishStartup(e)));
+    }
+
+    /**
+     * Adds the other panels once they have all been created, and lets a date range be chosen.
+     * A panel that failed to load in the background is created again here, so its error is reported as before.
+     * @param error what went wrong in the background, or null.
+     */
+    private void finishStartup(Throwable error)
+    {
+        if(error != null)
+            LOGGER.log(Level.SEVERE, "Startup did not complete in the background", error);
+        if(mpc == null)
+            mpc = new MapPanelController();
+        if(spc == null)
+            spc = new StatisticsPanelController();
+        if(gp == null)
+            gp = new GraphPanelController();
+        panels.add(mpc.getPane());
+        panels.add(spc.getPane());
+        panels.add(gp.getPane());
+
+        DatasetCatalog catalog = CovidDataLoader.getCatalog();
+        if(catalog != null)
+            setDateBounds(catalog.getFirstDate(), catalog.getLastDate());
+        startDate.setDisable(false);
+        endDate.setDisable(false);
+        wpc.setDateStatus("Select a date range to get started");
+        watchIncomingData();
+
+        StringBuilder report = new StringBuilder("Startup:");
+        synchronized(startupTimes)
+        {
+            for(Map.Entry<String, Long> phase : startupTimes.entrySet())
+                report.append(String.format("%n  %-32s %8.1f ms", phase.getKey(), phase.getValue() / 1e6));
+        }
+        report.append(String.format("%n  %-32s %8.1f ms", "Ready", (System.nanoTime() - startupStart) / 1e6));
+        LOGGER.info(report.toString());
+    }
+
+    /**
+     * Run with -Dcovid.incoming=<folder> to append CSV files of new days as they are put in the folder.
+     * The dates that can be selected are extended to cover them.
+     */
+    private void watchIncomingData()
+    {
+        String folder = System.getProperty("covid.incoming");
+        if(folder == null)
+            return;
+        try
+        {
+            new IncomingDataWatcher(Paths.get(folder),
+                catalog -> Platform.runLater(() -> setDateBounds(catalog.getFirstDate(), catalog.getLastDate()))).start();
+        }
+        catch (IOException e)
+        {
+            System.err.println(e.getClass().getName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Does one phase of starting up, and records how long it took.
+     */
+    private void timePhase(String phase, Runnable work)
+    {
+        long phaseStart = System.nanoTime();
+        work.run();
+        startupTimes.put(phase, System.nanoTime() - phaseStart);
+    }
+
+    /**
+     * Does one phase of starting up in the background, and records how long it took.
+     */
+    private CompletableFuture<Void> runPhase(String phase, Runnable work)
+    {
+        return AsyncCovidDataLoader.supply(() -> {
+            timePhase(phase, work);
+            return null;
+        });
+    }
+    
+    /**
+     * Called when the application exits. Stops the background queries and closes the database.
+     */
+    @Override
+    public void stop()
+    {
+        LOGGER.info("Result cache: " + ResultCache.getHits() + " hits, " + ResultCache.getMisses() + " misses, " + ResultCache.getEvictions() + " evictions");
+        AsyncCovidDataLoader.shutdown();
+        CovidDataLoader.close();
     }
     
     /**
@@ -162,12 +292,79 @@ public class WindowController extends Application
                 displayDateRange();
                 backButton.setDisable(false);
                 nextButton.setDisable(false);
-                mpc.heatMapUpdate(startDateSelected, endDateSelected);
-                spc.createStatistics(startDateSelected, endDateSelected);
-                gp.createGraphs(startDateSelected, endDateSelected);
+                long stallStart = System.nanoTime();
+                if(SYNCHRONOUS_UPDATES)
+                {
+                    mpc.heatMapUpdate(startDateSelected, endDateSelected);
+                    spc.createStatistics(startDateSelected, endDateSelected);
+                    gp.createGraphs(startDateSelected, endDateSelected);
+                }
+                else
+                {
+                    updatePanels(startDateSelected, endDateSelected);
+                }
+                LOGGER.info(String.format("Date range change blocked the JavaFX thread for %.1f ms", (System.nanoTime() - stallStart) / 1e6));
             }
         }
     }
+
+    /**
+     * Queries the data for all three panels in the background, and updates each panel when its data arrives.
+     * Queries for a previous date range that haven't finished are cancelled, and their results are dropped.
+     * @param start the start date.
+     * @param end the end date.
+     */
+    private void updatePanels(LocalDate start, LocalDate end)
+    {
+        for(CompletableFuture<?> query : pendingQueries)
+            query.cancel(false);
+        pendingQueries.clear();
+        int version = ++dateRangeVersion;
+
+        // The heat map is computed from the in-memory data, which only has to be loaded once.
+        // If it can't be, each borough's deltas are queried instead.
+        CompletableFuture<RangeQueryEngine> heatMapData = AsyncCovidDataLoader.supply(CovidDataLoader::getQueryEngine);
+        CompletableFuture<Integer[][]> heatMapDeltas = heatMapData.thenCompose(data ->
+            data == null ? AsyncCovidDataLoader.getBoroughDeltas(start, end) : CompletableFuture.completedFuture(null));
+        whenCurrent(heatMapDeltas, version, result -> mpc.heatMapUpdate(start, end, heatMapData.join(), result));
+
+        // Statistics are calculated lazily in the background, so they can be created here.
+        spc.createStatistics(start, end);
+
+        // Every series the graphs show is fetched by one query.
+        SeriesRequest graphRequest = gp.getRequest(start, end);
+        CompletableFuture<DailySeries[]> graphData = AsyncCovidDataLoader.getSeries(graphRequest);
+        whenCurrent(graphData, version, result -> gp.createGraphs(graphRequest, result));
+
+        pendingQueries.addAll(List.of(heatMapData, heatMapDeltas, graphData));
+    }
+
+    /**
+     * Passes the query's result to the update on the JavaFX thread, unless the date range has changed since.
+     * If the query failed, the error is logged, and shown on the welcome panel if the date range is still current.
+     * A cancelled query was for a date range that has been replaced, so it is dropped.
+     * @param query the background query.
+     * @param version the date range version the query was made for.
+     * @param update what to do with the result.
+     */
+    private <T> void whenCurrent(CompletableFuture<T> query, int version, Consumer<T> update)
+    {
+        query.whenComplete((result, error) -> {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if(cause instanceof CancellationException)
+                return;
+            if(cause != null)
+                LOGGER.log(Level.WARNING, "A query for the date range failed", cause);
+            Platform.runLater(() -> {
+                if(version != dateRangeVersion)
+                    return;
+                if(cause == null)
+                    update.accept(result);
+                else
+                    wpc.setDateStatus("The data for the selected range couldn't be loaded: " + cause.getMessage());
+            });
+        });
+    }
     
     /**
      * Displays the selected date range.
@@ -179,6 +376,15 @@ public class WindowController extends Application
         wpc.setDateStatus("Selected: " + formattedStartDate + " to " + formattedEndDate);
     }
     
+    /**
+     * Sets the first and last date that can be selected.
+     */
+    private void setDateBounds(LocalDate first, LocalDate last)
+    {
+        firstDate = first;
+        lastDate = last;
+    }
+    
     /**
      * Restricts the dates that can be selected.
      * I'm convinced there was a way to do this with a lambda but sadly could not make it work.
@@ -190,7 +396,7 @@ public class WindowController extends Application
                 return new DateCell() {
                     @Override public void updateItem(LocalDate item, boolean empty) {
                         super.updateItem(item, empty);
-                        if (item.isBefore(FIRST_DATE) || item.isAfter(LAST_DATE)){
+                        if (firstDate == null || item.isBefore(firstDate) || item.isAfter(lastDate)){
                             setDisable(true);
                         }
                     }
@@ -0,0 +1,244 @@
+package covid.benchmarks;
+
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks every public query method of CovidDataLoader, over small, medium and full
+ * date ranges, against both the database and the in-memory snapshot.
+ * Methods that take a borough are benchmarked for a single borough; the others cover all of London.
+ * getSeries is benchmarked with a request for several series at once, as the graphs make.
+ *
+ * @author Muhammed Keeka
+ * @version 2024-03-25
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CovidDataLoaderBenchmark
+{
+    private static final String BOROUGH = "Sutton";
+    private static final String OTHER_BOROUGH = "Camden";
+    // CovidDataSnapshot's column numbers and SeriesRequest.ALL_BOROUGHS.
+    private static final int NEW_CASES = 6;
+    private static final int NEW_DEATHS = 8;
+    private static final int ALL_BOROUGHS = -1;
+
+    // A DailySeries.DayConsumer that adds each value to daySum, made without reflection so calling it costs no more than a lambda.
+    private static final Object DAY_CONSUMER;
+    private static long daySum;
+
+    static
+    {
+        try
+        {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            Class<?> consumer = Class.forName("DailySeries$DayConsumer");
+            MethodType accept = MethodType.methodType(void.class, long.class, int.class);
+            DAY_CONSUMER = LambdaMetafactory.metafactory(lookup, "accept", MethodType.methodType(consumer), accept,
+                lookup.findStatic(CovidDataLoaderBenchmark.class, "addDay", accept), accept).getTarget().invoke();
+        }
+        catch (Throwable e)
+        {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // SMALL is a week, MEDIUM a quarter and FULL the whole dataset.
+    @Param({"SMALL", "MEDIUM", "FULL"})
+    public String range;
+
+    // Whether queries go to the database or the in-memory snapshot.
+    @Param({"false", "true"})
+    public boolean snapshot;
+
+    private LocalDate start;
+    private LocalDate end;
+    private Object seriesRequest;
+
+    @Setup
+    public void setUp() throws Throwable
+    {
+        DataLayer.SET_SNAPSHOT_MODE.invokeExact(snapshot);
+        LocalDate first = (LocalDate) DataLayer.GET_EARLIEST_DATE.invokeExact();
+        LocalDate last = (LocalDate) DataLayer.GET_LATEST_DATE.invokeExact();
+        switch(range)
+        {
+            case "SMALL":
+                start = LocalDate.of(2022, 3, 1);
+                end = start.plusDays(6);
+                break;
+            case "MEDIUM":
+                start = LocalDate.of(2022, 1, 1);
+                end = start.plusDays(89);
+                break;
+            default:
+                start = first;
+                end = last;
+        }
+        // London's new cases and deaths, and two boroughs' weekly new cases.
+        seriesRequest = DataLayer.NEW_SERIES_REQUEST.invokeExact(start, end);
+        DataLayer.SERIES_REQUEST_ADD.invokeExact(seriesRequest, ALL_BOROUGHS, NEW_CASES, 1);
+        DataLayer.SERIES_REQUEST_ADD.invokeExact(seriesRequest, ALL_BOROUGHS, NEW_DEATHS, 1);
+        DataLayer.SERIES_REQUEST_ADD.invokeExact(seriesRequest, (int) DataLayer.GET_BOROUGH_ID.invokeExact(BOROUGH), NEW_CASES, 7);
+        DataLayer.SERIES_REQUEST_ADD.invokeExact(seriesRequest, (int) DataLayer.GET_BOROUGH_ID.invokeExact(OTHER_BOROUGH), NEW_CASES, 7);
+    }
+
+    private static void addDay(long epochDay, int value)
+    {
+        daySum += value;
+    }
+
+    @TearDown
+    public void tearDown() throws Throwable
+    {
+        DataLayer.CLOSE.invokeExact();
+    }
+
+    @Benchmark
+    public Integer getRecordCount() throws Throwable
+    {
+        return (Integer) DataLayer.GET_RECORD_COUNT.invokeExact();
+    }
+
+    @Benchmark
+    public Integer getCases() throws Throwable
+    {
+        return (Integer) DataLayer.GET_CASES.invokeExact(start, end);
+    }
+
+    @Benchmark
+    public Integer getCasesForBorough() throws Throwable
+    {
+        return (Integer) DataLayer.GET_CASES_BOROUGH.invokeExact(start, end, BOROUGH);
+    }
+
+    @Benchmark
+    public Integer getMaxCases() throws Throwable
+    {
+        return (Integer) DataLayer.GET_MAX_CASES.invokeExact(start, end);
+    }
+
+    @Benchmark
+    public Integer getDeaths() throws Throwable
+    {
+        return (Integer) DataLayer.GET_DEATHS.invokeExact(start, end);
+    }
+
+    @Benchmark
+    public Integer getDeathsForBorough() throws Throwable
+    {
+        return (Integer) DataLayer.GET_DEATHS_BOROUGH.invokeExact(start, end, BOROUGH);
+    }
+
+    @Benchmark
+    public Integer getMaxDeaths() throws Throwable
+    {
+        return (Integer) DataLayer.GET_MAX_DEATHS.invokeExact(start, end);
+    }
+
+    @Benchmark
+    public Integer[][] getBoroughDeltas() throws Throwable
+    {
+        return (Integer[][]) DataLayer.GET_BOROUGH_DELTAS.invokeExact(start, end);
+    }
+
+    @Benchmark
+    public Integer getParksGMR() throws Throwable
+    {
+        return (Integer) DataLayer.GET_PARKS_GMR.invokeExact(start, end);
+    }
+
+    @Benchmark
+    public Integer getTransitGMR() throws Throwable
+    {
+        return (Integer) DataLayer.GET_TRANSIT_GMR.invokeExact(start, end);
+    }
+
+    @Benchmark
+    public LocalDate getEarliestDate() throws Throwable
+    {
+        return (LocalDate) DataLayer.GET_EARLIEST_DATE.invokeExact();
+    }
+
+    @Benchmark
+    public LocalDate getLatestDate() throws Throwable
+    {
+        return (LocalDate) DataLayer.GET_LATEST_DATE.invokeExact();
+    }
+
+    @Benchmark
+    public Map<?, ?> getCasesPerDay() throws Throwable
+    {
+        return (Map<?, ?>) DataLayer.GET_CASES_PER_DAY.invokeExact(start, end);
+    }
+
+    @Benchmark
+    public Map<?, ?> getDeathsPerDay() throws Throwable
+    {
+        return (Map<?, ?>) DataLayer.GET_DEATHS_PER_DAY.invokeExact(start, end);
+    }
+
+    @Benchmark
+    public Object getCasesSeries() throws Throwable
+    {
+        return DataLayer.GET_CASES_SERIES.invokeExact(start, end);
+    }
+
+    @Benchmark
+    public Object getDeathsSeries() throws Throwable
+    {
+        return DataLayer.GET_DEATHS_SERIES.invokeExact(start, end);
+    }
+
+    @Benchmark
+    public Object getSumSeries() throws Throwable
+    {
+        return DataLayer.GET_SUM_SERIES.invokeExact(NEW_CASES, start, end);
+    }
+
+    @Benchmark
+    public long forEachSumPerDay() throws Throwable
+    {
+        DataLayer.FOR_EACH_SUM_PER_DAY.invokeExact(NEW_CASES, start, end, DAY_CONSUMER);
+        return daySum;
+    }
+
+    @Benchmark
+    public Object getSeries() throws Throwable
+    {
+        return DataLayer.GET_SERIES.invokeExact(seriesRequest);
+    }
+
+    @Benchmark
+    public Object getCatalog() throws Throwable
+    {
+        return DataLayer.GET_CATALOG.invokeExact();
+    }
+
+    @Benchmark
+    public List<?> getBoroughData() throws Throwable
+    {
+        return (List<?>) DataLayer.GET_BOROUGH_DATA.invokeExact(start, end, BOROUGH, "Date");
+    }
+}
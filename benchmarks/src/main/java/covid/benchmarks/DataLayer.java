@@ -0,0 +1,105 @@
+package covid.benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Method handles for the static methods of CovidDataLoader, BoroughRegistry.getId and what building a SeriesRequest needs.
+ * The project's classes are in the default package, which can't be imported from a named
+ * package, and JMH refuses benchmarks in the default package. The handles are static final,
+ * so the JIT inlines the calls just as if they were direct.
+ *
+ * @author Muhammed Keeka
+ * @version 2024-03-25
+ */
+final class DataLayer
+{
+    static final MethodHandle SET_SNAPSHOT_MODE;
+    static final MethodHandle GET_RECORD_COUNT;
+    static final MethodHandle GET_CASES;
+    static final MethodHandle GET_CASES_BOROUGH;
+    static final MethodHandle GET_MAX_CASES;
+    static final MethodHandle GET_DEATHS;
+    static final MethodHandle GET_DEATHS_BOROUGH;
+    static final MethodHandle GET_MAX_DEATHS;
+    static final MethodHandle GET_BOROUGH_DELTAS;
+    static final MethodHandle GET_PARKS_GMR;
+    static final MethodHandle GET_TRANSIT_GMR;
+    static final MethodHandle GET_EARLIEST_DATE;
+    static final MethodHandle GET_LATEST_DATE;
+    static final MethodHandle GET_CASES_PER_DAY;
+    static final MethodHandle GET_DEATHS_PER_DAY;
+    static final MethodHandle GET_CASES_SERIES;
+    static final MethodHandle GET_DEATHS_SERIES;
+    static final MethodHandle GET_SUM_SERIES;
+    static final MethodHandle FOR_EACH_SUM_PER_DAY;
+    static final MethodHandle GET_SERIES;
+    static final MethodHandle NEW_SERIES_REQUEST;
+    static final MethodHandle SERIES_REQUEST_ADD;
+    static final MethodHandle GET_CATALOG;
+    static final MethodHandle GET_BOROUGH_DATA;
+    static final MethodHandle GET_QUERY_ENGINE;
+    static final MethodHandle CLOSE;
+    static final MethodHandle GET_BOROUGH_ID;
+
+    static
+    {
+        try
+        {
+            Class<?> loader = Class.forName("CovidDataLoader");
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            MethodType range = MethodType.methodType(Integer.class, LocalDate.class, LocalDate.class);
+            MethodType boroughRange = MethodType.methodType(Integer.class, LocalDate.class, LocalDate.class, String.class);
+            MethodType perDay = MethodType.methodType(Map.class, LocalDate.class, LocalDate.class);
+            SET_SNAPSHOT_MODE = lookup.findStatic(loader, "setSnapshotMode", MethodType.methodType(void.class, boolean.class));
+            GET_RECORD_COUNT = lookup.findStatic(loader, "getRecordCount", MethodType.methodType(Integer.class));
+            GET_CASES = lookup.findStatic(loader, "getCases", range);
+            GET_CASES_BOROUGH = lookup.findStatic(loader, "getCases", boroughRange);
+            GET_MAX_CASES = lookup.findStatic(loader, "getMaxCases", range);
+            GET_DEATHS = lookup.findStatic(loader, "getDeaths", range);
+            GET_DEATHS_BOROUGH = lookup.findStatic(loader, "getDeaths", boroughRange);
+            GET_MAX_DEATHS = lookup.findStatic(loader, "getMaxDeaths", range);
+            GET_BOROUGH_DELTAS = lookup.findStatic(loader, "getBoroughDeltas", MethodType.methodType(Integer[][].class, LocalDate.class, LocalDate.class));
+            GET_PARKS_GMR = lookup.findStatic(loader, "getParksGMR", range);
+            GET_TRANSIT_GMR = lookup.findStatic(loader, "getTransitGMR", range);
+            GET_EARLIEST_DATE = lookup.findStatic(loader, "getEarliestDate", MethodType.methodType(LocalDate.class));
+            GET_LATEST_DATE = lookup.findStatic(loader, "getLatestDate", MethodType.methodType(LocalDate.class));
+            GET_CASES_PER_DAY = lookup.findStatic(loader, "getCasesPerDay", perDay);
+            GET_DEATHS_PER_DAY = lookup.findStatic(loader, "getDeathsPerDay", perDay);
+            GET_CASES_SERIES = lookup.findStatic(loader, "getCasesSeries", MethodType.methodType(Class.forName("DailySeries"), LocalDate.class, LocalDate.class))
+                .asType(MethodType.methodType(Object.class, LocalDate.class, LocalDate.class));
+            GET_DEATHS_SERIES = lookup.findStatic(loader, "getDeathsSeries", MethodType.methodType(Class.forName("DailySeries"), LocalDate.class, LocalDate.class))
+                .asType(MethodType.methodType(Object.class, LocalDate.class, LocalDate.class));
+            GET_SUM_SERIES = lookup.findStatic(loader, "getSumSeries", MethodType.methodType(Class.forName("DailySeries"), int.class, LocalDate.class, LocalDate.class))
+                .asType(MethodType.methodType(Object.class, int.class, LocalDate.class, LocalDate.class));
+            FOR_EACH_SUM_PER_DAY = lookup.findStatic(loader, "forEachSumPerDay", MethodType.methodType(void.class, int.class, LocalDate.class, LocalDate.class, Class.forName("DailySeries$DayConsumer")))
+                .asType(MethodType.methodType(void.class, int.class, LocalDate.class, LocalDate.class, Object.class));
+            Class<?> request = Class.forName("SeriesRequest");
+            GET_SERIES = lookup.findStatic(loader, "getSeries", MethodType.methodType(Class.forName("[LDailySeries;"), request))
+                .asType(MethodType.methodType(Object.class, Object.class));
+            NEW_SERIES_REQUEST = lookup.findConstructor(request, MethodType.methodType(void.class, LocalDate.class, LocalDate.class))
+                .asType(MethodType.methodType(Object.class, LocalDate.class, LocalDate.class));
+            SERIES_REQUEST_ADD = lookup.findVirtual(request, "add", MethodType.methodType(int.class, int.class, int.class, int.class))
+                .asType(MethodType.methodType(void.class, Object.class, int.class, int.class, int.class));
+            GET_CATALOG = lookup.findStatic(loader, "getCatalog", MethodType.methodType(Class.forName("DatasetCatalog")))
+                .asType(MethodType.methodType(Object.class));
+            GET_BOROUGH_DATA = lookup.findStatic(loader, "getBoroughData", MethodType.methodType(List.class, LocalDate.class, LocalDate.class, String.class, String.class));
+            GET_QUERY_ENGINE = lookup.findStatic(loader, "getQueryEngine", MethodType.methodType(Class.forName("RangeQueryEngine")))
+                .asType(MethodType.methodType(Object.class));
+            CLOSE = lookup.findStatic(loader, "close", MethodType.methodType(void.class));
+            GET_BOROUGH_ID = lookup.findStatic(Class.forName("BoroughRegistry"), "getId", MethodType.methodType(int.class, String.class));
+        }
+        catch (ReflectiveOperationException e)
+        {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private DataLayer()
+    {
+    }
+}
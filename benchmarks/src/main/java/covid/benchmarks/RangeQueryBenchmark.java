@@ -0,0 +1,153 @@
+package covid.benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares date range aggregates run as SQL with the same aggregates answered by the RangeQueryEngine.
+ * Each pair computes exactly the same value: AVG(ParksGMR) and SUM(NewCases) across London.
+ * The SQL runs on a connection of its own, as the loader's queries do, so only SQLite's cost is measured.
+ *
+ * @author Muhammed Keeka
+ * @version 2024-03-25
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RangeQueryBenchmark
+{
+    // CovidDataSnapshot's column numbers and RangeQueryEngine.ALL_BOROUGHS.
+    private static final int PARKS_GMR = 2;
+    private static final int NEW_CASES = 6;
+    private static final int ALL_BOROUGHS = -1;
+    private static final String PARKS_AVERAGE = "SELECT AVG(ParksGMR) FROM CovidData WHERE `Date` BETWEEN ? AND ?;";
+    private static final String SUM_NEW_CASES = "SELECT SUM(NewCases) FROM CovidData WHERE `Date` BETWEEN ? AND ?;";
+
+    private static final MethodHandle GET_AVERAGE;
+    private static final MethodHandle GET_RANGE_SUM;
+
+    static
+    {
+        try
+        {
+            Class<?> engine = Class.forName("RangeQueryEngine");
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            // The receiver is typed as Object, since the class can't be named here.
+            GET_AVERAGE = lookup.findVirtual(engine, "getAverage", MethodType.methodType(Integer.class, int.class, LocalDate.class, LocalDate.class))
+                .asType(MethodType.methodType(Integer.class, Object.class, int.class, LocalDate.class, LocalDate.class));
+            GET_RANGE_SUM = lookup.findVirtual(engine, "getRangeSum", MethodType.methodType(Integer.class, int.class, int.class, LocalDate.class, LocalDate.class))
+                .asType(MethodType.methodType(Integer.class, Object.class, int.class, int.class, LocalDate.class, LocalDate.class));
+        }
+        catch (ReflectiveOperationException e)
+        {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // SMALL is a week, MEDIUM a quarter and FULL the whole dataset.
+    @Param({"SMALL", "MEDIUM", "FULL"})
+    public String range;
+
+    private LocalDate start;
+    private LocalDate end;
+    private Object engine;
+    private Connection conn;
+    private PreparedStatement parksAverage;
+    private PreparedStatement sumNewCases;
+
+    @Setup
+    public void setUp() throws Throwable
+    {
+        LocalDate first = (LocalDate) DataLayer.GET_EARLIEST_DATE.invokeExact();
+        LocalDate last = (LocalDate) DataLayer.GET_LATEST_DATE.invokeExact();
+        switch(range)
+        {
+            case "SMALL":
+                start = LocalDate.of(2022, 3, 1);
+                end = start.plusDays(6);
+                break;
+            case "MEDIUM":
+                start = LocalDate.of(2022, 1, 1);
+                end = start.plusDays(89);
+                break;
+            default:
+                start = first;
+                end = last;
+        }
+        engine = DataLayer.GET_QUERY_ENGINE.invokeExact();
+        conn = DriverManager.getConnection("jdbc:sqlite:CovidData.db");
+        parksAverage = conn.prepareStatement(PARKS_AVERAGE);
+        sumNewCases = conn.prepareStatement(SUM_NEW_CASES);
+    }
+
+    @TearDown
+    public void tearDown() throws Throwable
+    {
+        parksAverage.close();
+        sumNewCases.close();
+        conn.close();
+        DataLayer.CLOSE.invokeExact();
+    }
+
+    @Benchmark
+    public Integer sqlParksAverage() throws SQLException
+    {
+        return queryInt(parksAverage);
+    }
+
+    @Benchmark
+    public Integer engineParksAverage() throws Throwable
+    {
+        return (Integer) GET_AVERAGE.invokeExact(engine, PARKS_GMR, start, end);
+    }
+
+    @Benchmark
+    public Integer sqlCasesSum() throws SQLException
+    {
+        return queryInt(sumNewCases);
+    }
+
+    @Benchmark
+    public Integer engineCasesSum() throws Throwable
+    {
+        return (Integer) GET_RANGE_SUM.invokeExact(engine, NEW_CASES, ALL_BOROUGHS, start, end);
+    }
+
+    /**
+     * Runs an aggregate over the date range, truncated to an Integer as CovidDataLoader does.
+     */
+    private Integer queryInt(PreparedStatement stmt) throws SQLException
+    {
+        stmt.setString(1, start.toString());
+        stmt.setString(2, end.toString());
+        try (ResultSet rs = stmt.executeQuery())
+        {
+            rs.next();
+            int value = rs.getInt(1);
+            return rs.wasNull() ? null : value;
+        }
+    }
+}
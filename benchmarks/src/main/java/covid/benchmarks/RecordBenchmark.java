@@ -0,0 +1,183 @@
+package covid.benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares reading a borough's full history as boxed CovidData objects with reading it
+ * in the compact CovidRecords form through a cursor. Both sum every column of every row.
+ * The queries are answered from the snapshot, so the cost measured is that of the
+ * representation rather than of SQLite. The GC profiler's gc.alloc.rate.norm divided by
+ * the row count (printed at setup) gives the bytes allocated per row.
+ *
+ * @author Muhammed Keeka
+ * @version 2024-03-25
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecordBenchmark
+{
+    private static final String BOROUGH = "Sutton";
+    private static final int COLUMN_COUNT = 10;
+
+    private static final MethodHandle GET_BOROUGH_RECORDS;
+    private static final MethodHandle CURSOR;
+    private static final MethodHandle NEXT;
+    private static final MethodHandle IS_NULL;
+    private static final MethodHandle GET_INT;
+    private static final MethodHandle GET_DAY;
+    private static final MethodHandle SIZE;
+
+    static
+    {
+        try
+        {
+            Class<?> loader = Class.forName("CovidDataLoader");
+            Class<?> records = Class.forName("CovidRecords");
+            Class<?> cursor = Class.forName("CovidRecords$Cursor");
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            // The receivers are typed as Object, since the classes can't be named here.
+            GET_BOROUGH_RECORDS = lookup.findStatic(loader, "getBoroughRecords", MethodType.methodType(records, LocalDate.class, LocalDate.class, int.class, String.class))
+                .asType(MethodType.methodType(Object.class, LocalDate.class, LocalDate.class, int.class, String.class));
+            CURSOR = lookup.findVirtual(records, "cursor", MethodType.methodType(cursor))
+                .asType(MethodType.methodType(Object.class, Object.class));
+            SIZE = lookup.findVirtual(records, "size", MethodType.methodType(int.class))
+                .asType(MethodType.methodType(int.class, Object.class));
+            NEXT = lookup.findVirtual(cursor, "next", MethodType.methodType(boolean.class))
+                .asType(MethodType.methodType(boolean.class, Object.class));
+            IS_NULL = lookup.findVirtual(cursor, "isNull", MethodType.methodType(boolean.class, int.class))
+                .asType(MethodType.methodType(boolean.class, Object.class, int.class));
+            GET_INT = lookup.findVirtual(cursor, "getInt", MethodType.methodType(int.class, int.class))
+                .asType(MethodType.methodType(int.class, Object.class, int.class));
+            GET_DAY = lookup.findVirtual(cursor, "getEpochDay", MethodType.methodType(int.class))
+                .asType(MethodType.methodType(int.class, Object.class));
+        }
+        catch (ReflectiveOperationException e)
+        {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private LocalDate start;
+    private LocalDate end;
+    private int borough;
+
+    @Setup
+    public void setUp() throws Throwable
+    {
+        DataLayer.SET_SNAPSHOT_MODE.invokeExact(true);
+        start = (LocalDate) DataLayer.GET_EARLIEST_DATE.invokeExact();
+        end = (LocalDate) DataLayer.GET_LATEST_DATE.invokeExact();
+        borough = (int) DataLayer.GET_BOROUGH_ID.invokeExact(BOROUGH);
+        Object records = GET_BOROUGH_RECORDS.invokeExact(start, end, borough, "Date");
+        System.out.println("Rows per operation: " + (int) SIZE.invokeExact(records));
+    }
+
+    @TearDown
+    public void tearDown() throws Throwable
+    {
+        DataLayer.CLOSE.invokeExact();
+    }
+
+    @Benchmark
+    public long boxedRecords() throws Throwable
+    {
+        long sum = 0;
+        List<?> data = (List<?>) DataLayer.GET_BOROUGH_DATA.invokeExact(start, end, BOROUGH, "Date");
+        for(Object o : data)
+        {
+            sum += BoxedFields.sum(o);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long compactRecords() throws Throwable
+    {
+        long sum = 0;
+        Object records = GET_BOROUGH_RECORDS.invokeExact(start, end, borough, "Date");
+        Object cursor = CURSOR.invokeExact(records);
+        while((boolean) NEXT.invokeExact(cursor))
+        {
+            sum += (int) GET_DAY.invokeExact(cursor);
+            for(int column = 0; column < COLUMN_COUNT; column++)
+            {
+                if(!(boolean) IS_NULL.invokeExact(cursor, column))
+                    sum += (int) GET_INT.invokeExact(cursor, column);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Reads every field of a CovidData, the way existing callers do.
+     * Each getter has its own constant handle so that the JIT can inline it.
+     */
+    private static final class BoxedFields
+    {
+        private static final MethodHandle GET_DATE = getter("getDate", LocalDate.class);
+        private static final MethodHandle RETAIL_RECREATIONAL_GMR = getter("getRetailRecreationalGMR", Integer.class);
+        private static final MethodHandle GROCERY_PHARMACY_GMR = getter("getGroceryPharmacyGMR", Integer.class);
+        private static final MethodHandle PARKS_GMR = getter("getParksGMR", Integer.class);
+        private static final MethodHandle TRANSIT_GMR = getter("getTransitGMR", Integer.class);
+        private static final MethodHandle WORKPLACES_GMR = getter("getWorkplacesGMR", Integer.class);
+        private static final MethodHandle RESIDENTIAL_GMR = getter("getResidentialGMR", Integer.class);
+        private static final MethodHandle NEW_CASES = getter("getNewCases", Integer.class);
+        private static final MethodHandle TOTAL_CASES = getter("getTotalCases", Integer.class);
+        private static final MethodHandle NEW_DEATHS = getter("getNewDeaths", Integer.class);
+        private static final MethodHandle TOTAL_DEATHS = getter("getTotalDeaths", Integer.class);
+
+        private static MethodHandle getter(String name, Class<?> type)
+        {
+            try
+            {
+                return MethodHandles.publicLookup().findVirtual(Class.forName("CovidData"), name, MethodType.methodType(type))
+                    .asType(MethodType.methodType(type, Object.class));
+            }
+            catch (ReflectiveOperationException e)
+            {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private static long valueOf(Integer value)
+        {
+            return value == null ? 0 : value;
+        }
+
+        static long sum(Object record) throws Throwable
+        {
+            long sum = ((LocalDate) GET_DATE.invokeExact(record)).toEpochDay();
+            sum += valueOf((Integer) RETAIL_RECREATIONAL_GMR.invokeExact(record));
+            sum += valueOf((Integer) GROCERY_PHARMACY_GMR.invokeExact(record));
+            sum += valueOf((Integer) PARKS_GMR.invokeExact(record));
+            sum += valueOf((Integer) TRANSIT_GMR.invokeExact(record));
+            sum += valueOf((Integer) WORKPLACES_GMR.invokeExact(record));
+            sum += valueOf((Integer) RESIDENTIAL_GMR.invokeExact(record));
+            sum += valueOf((Integer) NEW_CASES.invokeExact(record));
+            sum += valueOf((Integer) TOTAL_CASES.invokeExact(record));
+            sum += valueOf((Integer) NEW_DEATHS.invokeExact(record));
+            sum += valueOf((Integer) TOTAL_DEATHS.invokeExact(record));
+            return sum;
+        }
+    }
+}